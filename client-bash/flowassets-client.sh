@@ -27,6 +27,7 @@ function show_help() {
         echo "  * --asset | Name of the asset"
         echo "  * --group | Name of the asset group"
         echo "  * --download | Flag to download asset or group of assets"
+        echo "  * --archive | Download whole group as single archive"
         echo "  * --upload | Flag to upload asset"
         echo "  * --update | Flag to update asset file"
         echo "  * --file | Path of the file to download to or upload from"
@@ -58,6 +59,17 @@ function download_group() {
   done
 }
 
+# Downloads all assets of the specified group as single archive
+function download_group_archive() {
+  echo "Downloading archive of group $GROUP_IDENTIFIER ..."
+  target_dir="${FILE_PATH:-.}"
+  mkdir -p "$target_dir"
+  # Leading slashes of absolute deploy paths are stripped, so everything is extracted below the target directory
+  curl -s -S -f --connect-timeout 15 --header "flow-auth-token: $ACCESS_TOKEN" "$SERVER_ADDRESS/api/group/$GROUP_IDENTIFIER/archive?compression=gzip" \
+    | tar -xz -C "$target_dir"
+  echo "Downloaded assets from group '$GROUP_IDENTIFIER' successfully!"
+}
+
 function save_asset() {
   success=$(jq -r '.valid' <<< "$1")
   download_url=$(jq -r '.downloadLink' <<< "$1")
@@ -85,9 +97,18 @@ function save_asset() {
     download_path="${deploy_path}${FILE_PATH}"
   fi
 
+  content_hash=$(jq -r '.contentHash' <<< "$1")
+  if [[ -n "$content_hash" && "null" != "$content_hash" && -f "$download_path" ]]; then
+    local_hash=$(sha256sum "$download_path" | cut -d ' ' -f 1)
+    if [[ "$local_hash" == "$content_hash" ]]; then
+      echo "Asset '$asset_name' at $download_path is up to date, skipping download"
+      return
+    fi
+  fi
+
   echo "Found an asset with UUID '$(jq -r '.uuid' <<< "$1")' downloading to $download_path ..."
 
-  if [[ "$download_url" == /api/file/* ]]
+  if [[ "$download_url" == /api/* ]]
   then
     curl -s -S -f -o "$download_path" --header "flow-auth-token: $ACCESS_TOKEN" "${SERVER_ADDRESS}${download_url}"
   else
@@ -155,6 +176,10 @@ for i in "$@"; do
       REPOSITORY_NAME="${i#*=}"
       shift
       ;;
+    --archive)
+      ARCHIVE_FLAG=true
+      shift
+      ;;
     --download)
       check_flag
       DOWNLOAD_FLAG=true
@@ -186,7 +211,10 @@ if [[ -z "$SERVER_ADDRESS" || -z "$ACCESS_TOKEN" || (-z "$ASSET_IDENTIFIER" && -
 fi
 
 if [[ ! -z "$DOWNLOAD_FLAG" ]]; then
-  if [[ ! -z "$GROUP_IDENTIFIER" ]]
+  if [[ ! -z "$GROUP_IDENTIFIER" && ! -z "$ARCHIVE_FLAG" ]]
+  then
+    download_group_archive
+  elif [[ ! -z "$GROUP_IDENTIFIER" ]]
   then
     download_group
   else
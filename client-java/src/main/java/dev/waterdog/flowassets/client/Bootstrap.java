@@ -72,6 +72,8 @@ public class Bootstrap {
     private static final OptionSpec<Void> DOWNLOAD_OPTION = PARSER.accepts("download", "Flag to download asset or group of assets");
     // TODO:  .requiredUnless("help", "upload", "update");
 
+    private static final OptionSpec<Void> ARCHIVE_OPTION = PARSER.accepts("archive", "Download whole group as single archive");
+
     private static final OptionSpec<Void> UPLOAD_OPTION = PARSER.accepts("upload", "Flag to upload asset");
     // TODO:  .requiredUnless("help", "download", "update");
 
@@ -88,6 +90,16 @@ public class Bootstrap {
             .withRequiredArg()
             .ofType(String.class);
 
+    private static final OptionSpec<Integer> PARALLELISM_OPTION = PARSER.accepts("parallelism", "Maximum number of assets downloaded at once")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(FlowAssetResolver.DEFAULT_PARALLELISM);
+
+    private static final OptionSpec<Integer> HOST_CONNECTIONS_OPTION = PARSER.accepts("host-connections", "Maximum number of concurrent downloads from one host")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(FlowAssetResolver.DEFAULT_HOST_CONNECTIONS);
+
     public static void main(String[] args) throws Exception {
         OptionSet options;
         if (args.length == 0 || (options = PARSER.parse(args)).has(HELP_OPTION)) {
@@ -95,7 +107,8 @@ public class Bootstrap {
             return;
         }
 
-        FlowAssetResolver resolver = new FlowAssetResolver(options.valueOf(SERVER_OPTION), options.valueOf(TOKEN_OPTION));
+        FlowAssetResolver resolver = new FlowAssetResolver(options.valueOf(SERVER_OPTION), options.valueOf(TOKEN_OPTION),
+                options.valueOf(PARALLELISM_OPTION), options.valueOf(HOST_CONNECTIONS_OPTION));
         if (options.has(DOWNLOAD_OPTION)) {
             download(resolver, options);
         } else if (options.has(UPLOAD_OPTION)) {
@@ -116,6 +129,13 @@ public class Bootstrap {
         }
 
         String groupName = options.valueOf(GROUP_OPTION);
+        if (options.has(ARCHIVE_OPTION)) {
+            Path downloadPath = options.has(FILE_OPTION) ? Paths.get(options.valueOf(FILE_OPTION)) : null;
+            int count = resolver.downloadGroupArchive(groupName, downloadPath).join();
+            log.info("Downloaded {} assets of group {} successfully!", count, groupName);
+            return;
+        }
+
         GroupDownload download = resolver.downloadGroup(groupName).join();
 
         AtomicInteger counter = new AtomicInteger();
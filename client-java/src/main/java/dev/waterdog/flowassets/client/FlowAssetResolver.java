@@ -23,34 +23,86 @@ import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 public class FlowAssetResolver {
     private static final Gson GSON = new Gson();
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+            .withZone(ZoneOffset.UTC);
+
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_HOST_CONNECTIONS = 4;
 
     private final String serverAddress;
     private final String serverToken;
     private final CloseableHttpClient client;
+    private final ExecutorService executor;
+    private final int hostConnections;
+    // Limits concurrent downloads per host, so waiting for connection never times out
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
 
     public FlowAssetResolver(String serverAddress, String serverToken) {
+        this(serverAddress, serverToken, DEFAULT_PARALLELISM, DEFAULT_HOST_CONNECTIONS);
+    }
+
+    public FlowAssetResolver(String serverAddress, String serverToken, int parallelism, int hostConnections) {
+        if (parallelism < 1 || hostConnections < 1) {
+            throw new IllegalArgumentException("Parallelism and host connections must be positive");
+        }
+
         this.serverAddress = serverAddress;
         this.serverToken = serverToken;
+        this.hostConnections = hostConnections;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "flowassets-download-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(hostConnections)
+                .setMaxConnTotal(Math.max(parallelism, hostConnections))
+                .build();
         this.client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
                 .setDefaultRequestConfig(RequestConfig.custom()
                         .setConnectionRequestTimeout(10, TimeUnit.SECONDS)
                         .setResponseTimeout(30, TimeUnit.SECONDS)
@@ -59,6 +111,7 @@ public class FlowAssetResolver {
     }
 
     public void close() {
+        this.executor.shutdown();
         try {
             this.client.close();
         } catch (IOException e) {
@@ -84,24 +137,134 @@ public class FlowAssetResolver {
             path = downloadPath;
         }
 
+        if (isUnchanged(assetData, path)) {
+            return; // local copy is identical
+        }
+
         if (path.getParent() != null) {
             Files.createDirectories(path.getParent());
         }
 
-        this.client.execute(new HttpGet(assetData.getDownloadLink()), response -> {
+        Semaphore permits = this.getHostPermits(assetData.getDownloadLink());
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to download " + assetData.getAssetName(), e);
+        }
+
+        try {
+            // Download into .part file first, so interrupted download can be resumed later
+            Path partPath = path.resolveSibling(path.getFileName() + ".part");
+            for (int attempt = 0; attempt < 2; attempt++) {
+                if (this.downloadPart(assetData.getDownloadLink(), partPath)) {
+                    Files.move(partPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    return;
+                }
+                Files.deleteIfExists(partPath); // partial file can not be resumed, start again
+            }
+        } finally {
+            permits.release();
+        }
+        throw new IllegalStateException("Failed to download asset " + assetData.getAssetName());
+    }
+
+    private Semaphore getHostPermits(String downloadLink) {
+        String host = downloadLink.startsWith("/") ? URI.create(this.serverAddress).getAuthority() : URI.create(downloadLink).getAuthority();
+        return this.hostPermits.computeIfAbsent(String.valueOf(host), h -> new Semaphore(this.hostConnections));
+    }
+
+    private boolean downloadPart(String downloadLink, Path partPath) throws IOException {
+        HttpGet get;
+        if (downloadLink.startsWith("/")) {
+            // Served by the FlowAssets server itself
+            get = new HttpGet(this.serverAddress + downloadLink);
+            get.addHeader("flow-auth-token", this.serverToken);
+        } else {
+            get = new HttpGet(downloadLink);
+        }
+
+        long offset = Files.exists(partPath) ? Files.size(partPath) : 0;
+        String validator = offset > 0 ? HTTP_DATE.format(Files.getLastModifiedTime(partPath).toInstant()) : null;
+        if (validator != null) {
+            get.addHeader("Range", "bytes=" + offset + "-");
+            get.addHeader("If-Range", validator);
+        }
+
+        return this.client.execute(get, response -> {
+            if (response.getCode() == 416) {
+                return false;
+            }
+
             if (response.getCode() >= 400 || response.getEntity() == null) {
                 throw new IllegalStateException("Request failed responseCode=" + response.getCode());
             }
 
-            HttpEntity entity = response.getEntity();
-            try (OutputStream stream = Files.newOutputStream(path, StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
-                entity.writeTo(stream);
+            Header lastModified = response.getFirstHeader("Last-Modified");
+            boolean resume = response.getCode() == 206;
+            if (resume) {
+                Header contentRange = response.getFirstHeader("Content-Range");
+                if (contentRange == null || !contentRange.getValue().startsWith("bytes " + offset + "-") ||
+                        lastModified == null || !lastModified.getValue().equals(validator)) {
+                    return false;
+                }
+            }
+
+            try (OutputStream stream = Files.newOutputStream(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                response.getEntity().writeTo(stream);
+            } finally {
+                // Remember which version of the file we have downloaded
+                if (lastModified != null) {
+                    setLastModified(partPath, lastModified.getValue());
+                }
             }
-            return null;
+            return true;
         });
     }
 
+    private static boolean isUnchanged(AssetDownloadData assetData, Path path) throws IOException {
+        if (assetData.getContentHash() == null || !Files.isRegularFile(path)) {
+            return false;
+        }
+
+        // Size check is cheap and avoids hashing files that obviously differ
+        if (assetData.getContentSize() != null && assetData.getContentSize() != Files.size(path)) {
+            return false;
+        }
+        return assetData.getContentHash().equalsIgnoreCase(sha256(path));
+    }
+
+    private static String sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[1024 * 64];
+        try (InputStream stream = new DigestInputStream(Files.newInputStream(path), digest)) {
+            while (stream.read(buffer) != -1) {
+                // digest is updated while reading
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static void setLastModified(Path path, String httpDate) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(HTTP_DATE.parse(httpDate, Instant::from)));
+        } catch (DateTimeParseException | IOException e) {
+            // Download will start from beginning next time
+        }
+    }
+
     public CompletableFuture<Void> downloadAsset(String assetName, Path downloadPath) {
         return CompletableFuture.supplyAsync(() -> {
             try {
@@ -118,7 +281,7 @@ public class FlowAssetResolver {
             } catch (Exception e) {
                 throw new IllegalStateException("Failed to resolve asset " + assetName, e);
             }
-        }).thenAccept(assetData -> {
+        }, this.executor).thenAccept(assetData -> {
             try {
                 this.resolveAsset(assetData, downloadPath);
             } catch (IOException e) {
@@ -143,7 +306,7 @@ public class FlowAssetResolver {
             } catch (Exception e) {
                 throw new IllegalStateException("Failed to resolve group " + groupName, e);
             }
-        }).thenApply(groupData -> {
+        }, this.executor).thenApply(groupData -> {
             if (!groupData.isFound() || groupData.getAssets() == null) {
                 throw new IllegalArgumentException("Unknown group " + groupName);
             }
@@ -151,13 +314,37 @@ public class FlowAssetResolver {
             Collection<GroupDownload.Download> downloads = new ArrayList<>();
             for (AssetDownloadData asset : groupData.getAssets()) {
                 long startTime = System.currentTimeMillis();
-                CompletableFuture<Void> future = CompletableFuture.runAsync(unsafe(() -> this.resolveAsset(asset, null)));
+                CompletableFuture<Void> future = CompletableFuture.runAsync(unsafe(() -> this.resolveAsset(asset, null)), this.executor);
                 downloads.add(new GroupDownload.Download(future, asset, startTime));
             }
             return new GroupDownload(downloads);
         });
     }
 
+    /**
+     * Downloads all assets of the group as single compressed archive, extracting files while they are received.
+     * Files are extracted below downloadPath (or the working directory), absolute deploy paths included.
+     * @return number of extracted assets
+     */
+    public CompletableFuture<Integer> downloadGroupArchive(String groupName, Path downloadPath) {
+        return CompletableFuture.supplyAsync(unsafe(() -> {
+            HttpGet get = new HttpGet(this.serverAddress + "/api/group/" + groupName + "/archive?compression=gzip");
+            get.addHeader("flow-auth-token", this.serverToken);
+            return this.client.execute(get, response -> {
+                if (response.getCode() == 404) {
+                    throw new IllegalArgumentException("Unknown group " + groupName);
+                }
+
+                if (response.getCode() >= 400 || response.getEntity() == null) {
+                    throw new IllegalStateException("Request failed responseCode=" + response.getCode());
+                }
+
+                try (InputStream content = new GZIPInputStream(response.getEntity().getContent(), 1024 * 64)) {
+                    return new TarArchiveReader(content).extract(downloadPath);
+                }
+            });
+        }), this.executor);
+    }
 
     public CompletableFuture<UploadResponseData> uploadAsset(String assetName, String repositoryName, Path filePath, String uploadFileName) {
         return CompletableFuture.supplyAsync(unsafe(() -> {
@@ -187,7 +374,7 @@ public class FlowAssetResolver {
                     }
                 });
             }
-        }));
+        }), this.executor);
     }
 
     public CompletableFuture<UpdateResponseData> updateAsset(String assetName, Path filePath) {
@@ -217,7 +404,7 @@ public class FlowAssetResolver {
                     }
                 });
             }
-        }));
+        }), this.executor);
     }
 
     private static <T> Supplier<T> unsafe(UnsafeSupplier<T> supplier) {
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Minimal streaming reader of ustar archives produced by the FlowAssets server.
+ * Supports GNU long name entries, everything except regular files is skipped.
+ */
+public class TarArchiveReader {
+    private static final int BLOCK_SIZE = 512;
+
+    private final InputStream stream;
+    private final byte[] buffer = new byte[1024 * 64];
+
+    public TarArchiveReader(InputStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Extracts all files below the directory. Leading slashes of absolute entry names are removed like tar does,
+     * entries which would end up outside the directory are rejected.
+     * When the directory is null, files are extracted to the working directory and absolute names are rejected.
+     * @return number of extracted files
+     */
+    public int extract(Path directory) throws IOException {
+        Path root = (directory == null ? Paths.get("") : directory).toAbsolutePath().normalize();
+        byte[] header = new byte[BLOCK_SIZE];
+        String longName = null;
+        int count = 0;
+
+        while (true) {
+            this.readFully(header, BLOCK_SIZE);
+            if (isEmptyBlock(header)) {
+                return count;
+            }
+
+            if (header[257] != 'u' || header[258] != 's' || header[259] != 't' || header[260] != 'a' || header[261] != 'r') {
+                throw new IOException("Invalid archive header");
+            }
+
+            long size = parseOctal(header, 124, 12);
+            byte type = header[156];
+            String name = longName == null ? parseName(header) : longName;
+            longName = null;
+
+            if (type == 'L') {
+                byte[] nameBytes = new byte[(int) size];
+                this.readFully(nameBytes, nameBytes.length);
+                longName = parseString(nameBytes, 0, nameBytes.length);
+            } else if (type == '0' || type == 0) {
+                Path path = resolveEntry(root, name, directory != null);
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+
+                Path partPath = path.resolveSibling(path.getFileName() + ".part");
+                try (OutputStream output = Files.newOutputStream(partPath)) {
+                    this.copy(output, size);
+                }
+                Files.move(partPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                count++;
+            } else {
+                this.copy(null, size);
+            }
+
+            int remainder = (int) (size % BLOCK_SIZE);
+            if (remainder != 0) {
+                this.copy(null, BLOCK_SIZE - remainder);
+            }
+        }
+    }
+
+    static Path resolveEntry(Path root, String name, boolean stripAbsolute) throws IOException {
+        String relativeName = name;
+        while (stripAbsolute && relativeName.startsWith("/")) {
+            relativeName = relativeName.substring(1);
+        }
+
+        Path entry = Paths.get(relativeName);
+        if (entry.isAbsolute() || entry.getRoot() != null) {
+            throw new IOException("Archive entry " + name + " has an absolute path");
+        }
+
+        Path path = root.resolve(entry).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IOException("Archive entry " + name + " is outside of the target directory");
+        }
+        return path;
+    }
+
+    private void copy(OutputStream output, long length) throws IOException {
+        while (length > 0) {
+            int read = this.stream.read(this.buffer, 0, (int) Math.min(this.buffer.length, length));
+            if (read < 0) {
+                throw new EOFException("Archive ended unexpectedly");
+            }
+            if (output != null) {
+                output.write(this.buffer, 0, read);
+            }
+            length -= read;
+        }
+    }
+
+    private void readFully(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = this.stream.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException("Archive ended unexpectedly");
+            }
+            offset += read;
+        }
+    }
+
+    private static String parseName(byte[] header) {
+        String name = parseString(header, 0, 100);
+        String prefix = parseString(header, 345, 155);
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private static String parseString(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long parseOctal(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '7') {
+                value = (value << 3) + (b - '0');
+            } else if (b != ' ' || value != 0) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    private static boolean isEmptyBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
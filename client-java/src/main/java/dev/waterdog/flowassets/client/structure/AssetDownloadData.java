@@ -27,4 +27,7 @@ public class AssetDownloadData {
     private String downloadLink;
     private String deployPath;
     private String fileName;
+    private String contentHash;
+    private Long contentSize;
+    private Long lastModified;
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.client;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TarArchiveReaderTest {
+    private static final int BLOCK_SIZE = 512;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void extractsRegularFiles() throws IOException {
+        ArchiveBuilder archive = new ArchiveBuilder()
+                .file("plugins/first.jar", "first")
+                .file("second.yml", "second");
+
+        assertEquals(2, extract(archive, this.directory));
+        assertContent("first", this.directory.resolve("plugins/first.jar"));
+        assertContent("second", this.directory.resolve("second.yml"));
+    }
+
+    @Test
+    void extractsGnuLongNames() throws IOException {
+        StringBuilder name = new StringBuilder("plugins/");
+        for (int i = 0; i < 120; i++) {
+            name.append('a');
+        }
+        name.append("/asset.jar");
+
+        ArchiveBuilder archive = new ArchiveBuilder()
+                .longName(name.toString())
+                .file(name.substring(0, 100), "long")
+                .file("short.jar", "short");
+
+        assertEquals(2, extract(archive, this.directory));
+        assertContent("long", this.directory.resolve(name.toString()));
+        assertContent("short", this.directory.resolve("short.jar"));
+    }
+
+    @Test
+    void stripsLeadingSlashes() throws IOException {
+        ArchiveBuilder archive = new ArchiveBuilder().file("/plugins/asset.jar", "content");
+
+        assertEquals(1, extract(archive, this.directory));
+        assertContent("content", this.directory.resolve("plugins/asset.jar"));
+    }
+
+    @Test
+    void rejectsEntriesOutsideOfDirectory() {
+        Path target = this.directory.resolve("target");
+        ArchiveBuilder archive = new ArchiveBuilder().file("plugins/../../escaped.jar", "content");
+
+        assertThrows(IOException.class, () -> extract(archive, target));
+        assertFalse(Files.exists(this.directory.resolve("escaped.jar")));
+    }
+
+    @Test
+    void rejectsAbsoluteNamesWithoutDirectory() throws IOException {
+        Path root = this.directory.toAbsolutePath();
+        assertThrows(IOException.class, () -> TarArchiveReader.resolveEntry(root, "/etc/passwd", false));
+        assertThrows(IOException.class, () -> TarArchiveReader.resolveEntry(root, "..", true));
+        assertThrows(IOException.class, () -> TarArchiveReader.resolveEntry(root, ".", true));
+        assertEquals(root.resolve("etc/passwd"), TarArchiveReader.resolveEntry(root, "/etc/passwd", true));
+    }
+
+    private static int extract(ArchiveBuilder archive, Path directory) throws IOException {
+        return new TarArchiveReader(new ByteArrayInputStream(archive.build())).extract(directory);
+    }
+
+    private static void assertContent(String expected, Path path) throws IOException {
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(path));
+    }
+
+    private static class ArchiveBuilder {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        ArchiveBuilder file(String name, String content) {
+            return this.entry(name, content.getBytes(StandardCharsets.UTF_8), (byte) '0');
+        }
+
+        ArchiveBuilder longName(String name) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            byte[] content = new byte[nameBytes.length + 1];
+            System.arraycopy(nameBytes, 0, content, 0, nameBytes.length);
+            return this.entry("././@LongLink", content, (byte) 'L');
+        }
+
+        byte[] build() {
+            this.output.write(new byte[BLOCK_SIZE * 2], 0, BLOCK_SIZE * 2);
+            return this.output.toByteArray();
+        }
+
+        private ArchiveBuilder entry(String name, byte[] content, byte type) {
+            byte[] header = new byte[BLOCK_SIZE];
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+            byte[] size = String.format("%011o", content.length).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(size, 0, header, 124, size.length);
+            header[156] = type;
+            System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+            this.output.write(header, 0, header.length);
+            this.output.write(content, 0, content.length);
+            int remainder = content.length % BLOCK_SIZE;
+            if (remainder != 0) {
+                this.output.write(new byte[BLOCK_SIZE - remainder], 0, BLOCK_SIZE - remainder);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package db.migration;
+
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds indexes for every lookup column. Names were never enforced to be unique, so the unique indexes
+ * are preceded by a duplicate check which fails with the offending values instead of a bare MySQL error.
+ * Every step checks whether it was already applied, so a partially applied migration can be repaired and re-run.
+ */
+public class V3__Lookup_indexes extends BaseJavaMigration {
+
+    private static final int MAX_REPORTED_DUPLICATES = 20;
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        List<String> duplicates = new ArrayList<>();
+        duplicates.addAll(findDuplicates(connection, "assets", "asset_name"));
+        duplicates.addAll(findDuplicates(connection, "asset_groups", "name"));
+        duplicates.addAll(findDuplicates(connection, "deploy_paths", "name"));
+        duplicates.addAll(findDuplicates(connection, "s3_servers", "name"));
+        duplicates.addAll(findDuplicates(connection, "secret_tokens", "token_hash"));
+        if (!duplicates.isEmpty()) {
+            throw new FlywayException("Can not create unique lookup indexes, rename or remove the duplicate entries first:\n  " +
+                    String.join("\n  ", duplicates));
+        }
+
+        // Created by Hibernate schema update in the previous release, superseded by uq_assets_name
+        if (SchemaInspector.hasIndex(connection, "assets", "idx_assets_name")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP INDEX idx_assets_name ON assets");
+            }
+        }
+
+        // Every getByName/findByHash lookup filters on one of these columns
+        createIndex(connection, "uq_assets_name", true, "assets", "asset_name");
+        createIndex(connection, "uq_asset_groups_name", true, "asset_groups", "name");
+        createIndex(connection, "uq_deploy_paths_name", true, "deploy_paths", "name");
+        createIndex(connection, "uq_s3_servers_name", true, "s3_servers", "name");
+        createIndex(connection, "uq_secret_tokens_hash", true, "secret_tokens", "token_hash");
+
+        // Primary key covers lookups by asset, this one covers assets of a group
+        createIndex(connection, "idx_groups_join_group", false, "groups_join", "group_id, asset_id");
+
+        // Reference counting of deduplicated blobs
+        createIndex(connection, "idx_assets_content", false, "assets", "content_hash, asset_repository");
+    }
+
+    private static List<String> findDuplicates(Connection connection, String table, String column) throws SQLException {
+        List<String> duplicates = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT " + column + ", COUNT(*) FROM " + table + " WHERE " + column +
+                     " IS NOT NULL GROUP BY " + column + " HAVING COUNT(*) > 1 ORDER BY " + column + " LIMIT " + MAX_REPORTED_DUPLICATES)) {
+            while (result.next()) {
+                duplicates.add(table + "." + column + " '" + result.getString(1) + "' (" + result.getLong(2) + " rows)");
+            }
+        }
+        return duplicates;
+    }
+
+    private static void createIndex(Connection connection, String name, boolean unique, String table, String columns) throws SQLException {
+        if (SchemaInspector.hasIndex(connection, table, name)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + name + " ON " + table + " (" + columns + ")");
+        }
+    }
+}
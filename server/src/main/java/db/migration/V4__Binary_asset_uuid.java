@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Converts asset uuid columns from varchar(36) to binary(16). Foreign key names generated by Hibernate
+ * differ between databases, so they have to be looked up and this can not be a plain SQL migration.
+ * MySQL commits every ALTER TABLE on its own, so each table is checked separately and an interrupted
+ * run can be re-run from where it stopped.
+ */
+public class V4__Binary_asset_uuid extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            if (isVarchar(connection, "assets", "uuid")) {
+                // Foreign key would block changing the referenced primary key
+                dropForeignKeys(connection, statement, "groups_join", "asset_id");
+                convertColumn(connection, statement, "assets", "uuid", "uuid");
+            }
+
+            if (isVarchar(connection, "groups_join", "asset_id")) {
+                dropForeignKeys(connection, statement, "groups_join", "asset_id");
+                convertColumn(connection, statement, "groups_join", "asset_id", "asset_id, group_id");
+            }
+
+            if (SchemaInspector.getForeignKeys(connection, "groups_join", "asset_id").isEmpty()) {
+                statement.execute("ALTER TABLE groups_join ADD CONSTRAINT fk_groups_join_asset FOREIGN KEY (asset_id) REFERENCES assets (uuid)");
+            }
+        }
+    }
+
+    private static boolean isVarchar(Connection connection, String table, String column) throws SQLException {
+        return "varchar".equalsIgnoreCase(SchemaInspector.getColumnType(connection, table, column));
+    }
+
+    private static void dropForeignKeys(Connection connection, Statement statement, String table, String column) throws SQLException {
+        for (String constraint : SchemaInspector.getForeignKeys(connection, table, column)) {
+            statement.execute("ALTER TABLE " + table + " DROP FOREIGN KEY `" + constraint + "`");
+        }
+    }
+
+    private static void convertColumn(Connection connection, Statement statement, String table, String column, String primaryKey) throws SQLException {
+        String binaryColumn = column + "_bin";
+        if (SchemaInspector.getColumnType(connection, table, binaryColumn) == null) {
+            statement.execute("ALTER TABLE " + table + " ADD COLUMN " + binaryColumn + " BINARY(16) NULL");
+        }
+        statement.execute("UPDATE " + table + " SET " + binaryColumn + " = UNHEX(REPLACE(" + column + ", '-', ''))");
+        statement.execute("ALTER TABLE " + table + " DROP PRIMARY KEY, DROP COLUMN " + column + ", " +
+                "CHANGE " + binaryColumn + " " + column + " BINARY(16) NOT NULL, ADD PRIMARY KEY (" + primaryKey + ")");
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("dev.waterdog.flowassets.GroupInfo")
+@Label("Group Info Request")
+@Category({"FlowAssets", "API"})
+@StackTrace(false)
+public class GroupInfoEvent extends Event {
+
+    @Label("Group")
+    public String group;
+
+    @Label("Found")
+    public boolean found;
+
+    @Label("Assets")
+    public int assets;
+
+    @Label("Total Size")
+    @DataAmount
+    public long size;
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("dev.waterdog.flowassets.StorageOperation")
+@Label("Storage Operation")
+@Category({"FlowAssets", "Storage"})
+@Description("Operation of a storage backend, lasts until the returned future completes")
+@StackTrace(false)
+public class StorageOperationEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Backend")
+    public String backend;
+
+    @Label("Repository")
+    public String repository;
+
+    @Label("Asset UUID")
+    @Description("Asset UUID, or storage key for operations on content addressed blobs")
+    public String assetUuid;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.metrics;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.waterdog.flowassets.jfr.StorageOperationEvent;
+import dev.waterdog.flowassets.structure.FileSnapshot;
+import dev.waterdog.flowassets.structure.RepositoryType;
+import dev.waterdog.flowassets.utils.AsyncLimiter;
+import dev.waterdog.flowassets.utils.Bulkhead;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.vertx.core.Future;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.inject.Produces;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Application metrics exposed on /q/metrics. Components register their caches and executors here,
+ * storage backends and API routes report operations and transfers as they happen.
+ * Storage operations are also recorded as JFR events.
+ */
+@Singleton
+public class FlowMetrics {
+    public static final String UPLOAD = "upload";
+    public static final String DOWNLOAD = "download";
+
+    @Inject
+    MeterRegistry registry;
+
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    /**
+     * Latency meters are published as histograms, so percentiles can be aggregated across the fleet.
+     * Static, because filters must exist before the registry this bean depends on.
+     */
+    @Produces
+    @Singleton
+    static MeterFilter histogramFilter() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getName().startsWith("http.server.requests") || id.getName().startsWith("flowassets.")) {
+                    return DistributionStatisticConfig.builder()
+                            .percentilesHistogram(true)
+                            .build()
+                            .merge(config);
+                }
+                return config;
+            }
+        };
+    }
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("flowassets.transfers.active", this.activeUploads, AtomicInteger::get)
+                .description("Transfers currently in progress")
+                .tag("direction", UPLOAD)
+                .register(this.registry);
+        Gauge.builder("flowassets.transfers.active", this.activeDownloads, AtomicInteger::get)
+                .description("Transfers currently in progress")
+                .tag("direction", DOWNLOAD)
+                .register(this.registry);
+    }
+
+    /**
+     * Publishes hit, miss and eviction counts of a cache. Owner is referenced weakly by the registry,
+     * so it must be kept alive by the caller.
+     */
+    public <T> void monitorCache(String cache, T owner, Function<T, CacheStats> stats) {
+        FunctionCounter.builder("flowassets.cache.requests", owner, o -> stats.apply(o).hitCount())
+                .tags("cache", cache, "result", "hit")
+                .register(this.registry);
+        FunctionCounter.builder("flowassets.cache.requests", owner, o -> stats.apply(o).missCount())
+                .tags("cache", cache, "result", "miss")
+                .register(this.registry);
+        FunctionCounter.builder("flowassets.cache.evictions", owner, o -> stats.apply(o).evictionCount())
+                .tag("cache", cache)
+                .register(this.registry);
+    }
+
+    public void monitorBulkhead(Bulkhead bulkhead) {
+        Gauge.builder("flowassets.bulkhead.active", bulkhead, Bulkhead::getActive)
+                .tag("bulkhead", bulkhead.getName())
+                .register(this.registry);
+        Gauge.builder("flowassets.bulkhead.queued", bulkhead, Bulkhead::getQueued)
+                .tag("bulkhead", bulkhead.getName())
+                .register(this.registry);
+        FunctionCounter.builder("flowassets.bulkhead.rejected", bulkhead, Bulkhead::getRejected)
+                .tag("bulkhead", bulkhead.getName())
+                .register(this.registry);
+    }
+
+    public void monitorLimiter(AsyncLimiter limiter) {
+        Gauge.builder("flowassets.bulkhead.active", limiter, AsyncLimiter::getActive)
+                .tag("bulkhead", limiter.getName())
+                .register(this.registry);
+        Gauge.builder("flowassets.bulkhead.queued", limiter, AsyncLimiter::getQueued)
+                .tag("bulkhead", limiter.getName())
+                .register(this.registry);
+        FunctionCounter.builder("flowassets.bulkhead.rejected", limiter, AsyncLimiter::getRejected)
+                .tag("bulkhead", limiter.getName())
+                .register(this.registry);
+    }
+
+    /**
+     * Times single operation of a storage backend. Target is the asset UUID or storage key the operation works on.
+     */
+    public <T> CompletableFuture<T> timeStorage(RepositoryType backend, String repository, String operation, String target,
+                                                Supplier<CompletableFuture<T>> action) {
+        return this.timeStorage(backend, repository, operation, target, 0, action);
+    }
+
+    private <T> CompletableFuture<T> timeStorage(RepositoryType backend, String repository, String operation, String target,
+                                                 long size, Supplier<CompletableFuture<T>> action) {
+        StorageOperationEvent event = new StorageOperationEvent();
+        event.begin();
+        Timer.Sample sample = Timer.start(this.registry);
+        CompletableFuture<T> future;
+        try {
+            future = action.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return future.whenComplete((result, error) -> {
+            sample.stop(Timer.builder("flowassets.storage.operations")
+                    .description("Storage backend operations")
+                    .tags("backend", backend.getSaveName(), "repository", repository,
+                            "operation", operation, "outcome", error == null ? "success" : "failure")
+                    .register(this.registry));
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.backend = backend.getSaveName();
+                event.repository = repository;
+                event.assetUuid = target;
+                event.size = result instanceof FileSnapshot snapshot ? snapshot.getContentLength() : size;
+                event.success = error == null;
+                event.commit();
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #timeStorage(RepositoryType, String, String, String, Supplier)} for uploads,
+     * which are also counted as active transfers and their bytes recorded once stored.
+     */
+    public CompletableFuture<Void> timeUpload(RepositoryType backend, String repository, String target, long bytes,
+                                              Supplier<CompletableFuture<Void>> action) {
+        this.activeUploads.incrementAndGet();
+        return this.timeStorage(backend, repository, "save", target, bytes, action).whenComplete((result, error) -> {
+            this.activeUploads.decrementAndGet();
+            if (error == null) {
+                this.transferBytes(repository, UPLOAD).increment(bytes);
+            }
+        });
+    }
+
+    /**
+     * Counts download served by the API while it is in progress, bytes are recorded once it succeeds.
+     */
+    public <T> Future<T> trackDownload(String repository, long bytes, Future<T> transfer) {
+        this.activeDownloads.incrementAndGet();
+        return transfer.onComplete(result -> {
+            this.activeDownloads.decrementAndGet();
+            if (result.succeeded()) {
+                this.transferBytes(repository, DOWNLOAD).increment(bytes);
+            }
+        });
+    }
+
+    public boolean timeAuthCheck(BooleanSupplier check) {
+        Timer.Sample sample = Timer.start(this.registry);
+        boolean granted = check.getAsBoolean();
+        sample.stop(Timer.builder("flowassets.auth.checks")
+                .description("API token checks")
+                .tag("result", granted ? "granted" : "denied")
+                .register(this.registry));
+        return granted;
+    }
+
+    private Counter transferBytes(String repository, String direction) {
+        return Counter.builder("flowassets.transfer.bytes")
+                .description("Bytes uploaded to and served from repositories")
+                .baseUnit("bytes")
+                .tags("repository", repository, "direction", direction)
+                .register(this.registry);
+    }
+}
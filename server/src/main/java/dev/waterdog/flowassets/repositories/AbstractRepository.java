@@ -17,19 +17,81 @@ package dev.waterdog.flowassets.repositories;
 
 import com.vaadin.flow.data.provider.CallbackDataProvider;
 import com.vaadin.flow.data.provider.DataProvider;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
 import com.vaadin.flow.function.ValueProvider;
 import dev.waterdog.flowassets.utils.DataProviderBuilder;
+import io.quarkus.hibernate.orm.panache.PanacheQuery;
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
+import io.quarkus.panache.common.Sort;
 
+import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
 public abstract class AbstractRepository<T> implements PanacheRepository<T> {
+    public static final String NAME_SORT_KEY = "name";
+
+    @Inject
+    TransactionSynchronizationRegistry transactionRegistry;
 
     public abstract String nameIdentifier();
 
+    /**
+     * Called after entity of this repository was saved or removed, e.g. to invalidate caches.
+     */
+    protected void onChange() {
+    }
+
+    protected void notifyChange() {
+        this.onChange();
+        if (this.transactionRegistry.getTransactionKey() == null) {
+            return;
+        }
+
+        // Readers could have cached state from before the commit in the meantime
+        this.transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                AbstractRepository.this.onChange();
+            }
+        });
+    }
+
+    /**
+     * Runs the action once current transaction commits, or immediately when there is none.
+     */
+    protected void afterCommit(Runnable action) {
+        if (this.transactionRegistry.getTransactionKey() == null) {
+            action.run();
+            return;
+        }
+
+        this.transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+
     @Transactional
     public List<T> findByName(String name) {
         return this.find(this.nameIdentifier() + " like ?1", "%" + name.trim() + "%").list();
@@ -42,9 +104,134 @@ public abstract class AbstractRepository<T> implements PanacheRepository<T> {
 
     @Transactional
     public List<T> findByName(String name, int pageIndex, int pageSize) {
-        return this.find(this.nameIdentifier() + " like ?1", "%" + name.trim() + "%").page(pageIndex, pageSize).list();
+        return this.find(this.nameIdentifier() + " like ?1", Sort.by(this.idIdentifier()), "%" + name.trim() + "%")
+                .page(pageIndex, pageSize)
+                .list();
+    }
+
+    /**
+     * Loads rows from offset to offset + limit, optionally filtered by name. Sort orders
+     * which can not be handled by database are ignored.
+     */
+    @Transactional
+    public List<T> findPage(String filter, List<QuerySortOrder> sortOrders, int offset, int limit) {
+        return this.findPage(filter, sortOrders, null, offset, limit);
+    }
+
+    /**
+     * Loads rows following the cursor. Unlike offset paging this does not have to
+     * scan all preceding rows, so deep pages are as cheap as the first one.
+     */
+    @Transactional
+    public List<T> findPage(String filter, List<QuerySortOrder> sortOrders, PageCursor after, int limit) {
+        return this.findPage(filter, sortOrders, after, 0, limit);
+    }
+
+    protected List<T> findPage(String filter, List<QuerySortOrder> sortOrders, PageCursor after, int offset, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        List<QuerySortOrder> orders = this.resolveSortOrders(sortOrders);
+        SortDirection direction = orders.isEmpty() ? SortDirection.ASCENDING : orders.get(orders.size() - 1).getDirection();
+
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        if (filter != null) {
+            params.add("%" + filter.trim() + "%");
+            conditions.add(this.nameIdentifier() + " like ?" + params.size());
+        }
+
+        if (after != null) {
+            if (!this.supportsKeyset(orders)) {
+                throw new IllegalArgumentException("Keyset paging is not supported for " + sortOrders);
+            }
+
+            String operator = direction == SortDirection.DESCENDING ? " < " : " > ";
+            if (orders.isEmpty()) {
+                params.add(after.id());
+                conditions.add(this.idIdentifier() + operator + "?" + params.size());
+            } else {
+                params.add(after.sortValue());
+                int valueIndex = params.size();
+                params.add(after.id());
+                conditions.add("(" + this.nameIdentifier() + operator + "?" + valueIndex + " or (" + this.nameIdentifier() +
+                        " = ?" + valueIndex + " and " + this.idIdentifier() + operator + "?" + params.size() + "))");
+            }
+        }
+
+        Sort sort = null;
+        for (QuerySortOrder order : orders) {
+            String identifier = this.sortIdentifiers().get(order.getSorted());
+            Sort.Direction sortDirection = order.getDirection() == SortDirection.DESCENDING ? Sort.Direction.Descending : Sort.Direction.Ascending;
+            sort = sort == null ? Sort.by(identifier, sortDirection) : sort.and(identifier, sortDirection);
+        }
+
+        // Unique tie-breaker keeps page boundaries stable between queries
+        Sort.Direction idDirection = direction == SortDirection.DESCENDING ? Sort.Direction.Descending : Sort.Direction.Ascending;
+        sort = sort == null ? Sort.by(this.idIdentifier(), idDirection) : sort.and(this.idIdentifier(), idDirection);
+
+        PanacheQuery<T> query = conditions.isEmpty() ? this.findAll(sort) : this.find(String.join(" and ", conditions), sort, params.toArray());
+        return this.fetchPage(query.range(offset, offset + limit - 1));
+    }
+
+    /**
+     * Loads rows of a page shown in admin views, subclasses can fetch associations the views need.
+     */
+    protected List<T> fetchPage(PanacheQuery<T> query) {
+        return query.list();
+    }
+
+    /**
+     * Creates cursor pointing after given row, or null if the sort orders do not allow keyset paging.
+     */
+    public PageCursor createCursor(T value, List<QuerySortOrder> sortOrders) {
+        List<QuerySortOrder> orders = this.resolveSortOrders(sortOrders);
+        if (!this.supportsKeyset(orders)) {
+            return null;
+        }
+
+        Object id = this.getEntityManager().getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(value);
+        if (orders.isEmpty()) {
+            return new PageCursor(null, id);
+        }
+
+        Object nameValue = this.getNameValue(value);
+        return nameValue == null ? null : new PageCursor(nameValue, id);
+    }
+
+    protected boolean supportsKeyset(List<QuerySortOrder> orders) {
+        return orders.isEmpty() || (orders.size() == 1 && orders.get(0).getSorted().equals(NAME_SORT_KEY));
     }
 
+    protected List<QuerySortOrder> resolveSortOrders(List<QuerySortOrder> sortOrders) {
+        if (sortOrders == null || sortOrders.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, String> identifiers = this.sortIdentifiers();
+        List<QuerySortOrder> orders = new ArrayList<>(sortOrders.size());
+        for (QuerySortOrder order : sortOrders) {
+            if (identifiers.containsKey(order.getSorted())) {
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Grid sort properties which can be pushed down to database, mapped to identifiers used in queries.
+     */
+    protected Map<String, String> sortIdentifiers() {
+        return Map.of(NAME_SORT_KEY, this.nameIdentifier());
+    }
+
+    protected String idIdentifier() {
+        return "id";
+    }
+
+    protected abstract Object getNameValue(T value);
+
     @Transactional
     public T getByName(String name) {
         return this.find(this.nameIdentifier(), name.trim()).firstResult();
@@ -57,7 +244,7 @@ public abstract class AbstractRepository<T> implements PanacheRepository<T> {
 
     @Transactional
     public List<T> getAll(int pageIndex, int pageSize) {
-        return this.listAll().subList(pageIndex, pageSize);
+        return this.findAll(Sort.by(this.idIdentifier())).page(pageIndex, pageSize).list();
     }
 
     @Transactional
@@ -72,6 +259,7 @@ public abstract class AbstractRepository<T> implements PanacheRepository<T> {
         }
 
         this.persist(value);
+        this.notifyChange();
         return value;
     }
 
@@ -82,6 +270,7 @@ public abstract class AbstractRepository<T> implements PanacheRepository<T> {
         } else {
             this.delete(this.getEntityManager().merge(value));
         }
+        this.notifyChange();
     }
 
     public static <T> DataProvider<T, String> createDataProvider(AbstractRepository<T> repository) {
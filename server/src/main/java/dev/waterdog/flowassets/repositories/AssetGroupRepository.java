@@ -15,20 +15,91 @@
 
 package dev.waterdog.flowassets.repositories;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.waterdog.flowassets.metrics.FlowMetrics;
 import dev.waterdog.flowassets.structure.AssetGroup;
+import dev.waterdog.flowassets.utils.Bulkheads;
+import dev.waterdog.flowassets.utils.CacheableMap;
+import io.smallrye.mutiny.Uni;
 import org.hibernate.Hibernate;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 import javax.transaction.Transactional;
+import java.util.Optional;
 
 @ApplicationScoped
 public class AssetGroupRepository extends AbstractRepository<AssetGroup> {
 
+    @Inject
+    MetadataCacheSettings cacheSettings;
+
+    @Inject
+    AssetsRepository assetsRepository;
+
+    @Inject
+    ReactiveAssetsRepository reactiveRepository;
+
+    @Inject
+    Bulkheads bulkheads;
+
+    @Inject
+    FlowMetrics metrics;
+
+    private CacheableMap<String, Optional<AssetGroup>> nameCache;
+
+    @PostConstruct
+    void initCaches() {
+        this.nameCache = this.cacheSettings.createCache("group-name");
+        this.metrics.monitorCache(this.nameCache.getName(), this.nameCache, CacheableMap::stats);
+    }
+
+    public AssetGroup getCachedByName(String name) {
+        return this.nameCache.computeIfAbsent(name.trim(), key -> Optional.ofNullable(this.getByName(key))).orElse(null);
+    }
+
+    /**
+     * Non-blocking variant of {@link #getCachedByName(String)}.
+     */
+    public Uni<AssetGroup> getCachedByNameAsync(String name) {
+        String key = name.trim();
+        Optional<AssetGroup> cached = this.nameCache.getIfPresent(key);
+        if (cached != null) {
+            return Uni.createFrom().item(cached.orElse(null));
+        }
+
+        if (!this.reactiveRepository.isEnabled()) {
+            return Uni.createFrom().item(() -> this.getCachedByName(key))
+                    .runSubscriptionOn(this.bulkheads.getMetadata());
+        }
+        return Uni.createFrom().deferred(() -> {
+            long generation = this.nameCache.getGeneration();
+            return this.reactiveRepository.findGroupByName(key)
+                    .invoke(group -> this.nameCache.putIfGeneration(key, Optional.ofNullable(group), generation));
+        });
+    }
+
+    public CacheStats getCacheStats() {
+        return this.nameCache.stats();
+    }
+
+    @Override
+    protected void onChange() {
+        this.nameCache.clear();
+        this.assetsRepository.invalidateCaches(); // group membership is part of asset data
+    }
+
     @Override
     public String nameIdentifier() {
         return "name";
     }
 
+    @Override
+    protected Object getNameValue(AssetGroup value) {
+        return value.getName();
+    }
+
     @Transactional
     public AssetGroup getInitialized(String name) {
         AssetGroup merge = this.getByName(name);
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.repositories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory index of asset names. Substring queries are answered from trigram posting lists,
+ * so unlike <code>like '%name%'</code> they never scan all names.
+ * <p>
+ * Query syntax: <code>"name"</code> matches exact name, <code>name*</code> matches prefix
+ * and anything else matches names containing the query. Matching is case-insensitive.
+ */
+public class AssetNameIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    public static final Comparator<Entry> BY_NAME = Comparator.comparing(Entry::name, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(entry -> entry.uuid().toString());
+    // Canonical string order equals byte order of the binary uuid column
+    public static final Comparator<Entry> BY_UUID = Comparator.comparing(entry -> entry.uuid().toString());
+
+    private volatile Tables tables = new Tables();
+    private volatile boolean loaded;
+    // Changes since the oldest running rebuild by uuid, null name marks removal. Guarded by this.
+    private final Map<UUID, Change> changes = new HashMap<>();
+    private long version;
+    private long rebuiltVersion = -1;
+
+    public boolean isLoaded() {
+        return this.loaded;
+    }
+
+    /**
+     * Returns version to pass to {@link #rebuild(Map, long)}, must be taken before names are loaded.
+     */
+    public synchronized long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Replaces the index with loaded names. Changes made after the version was taken might be missing
+     * from the names, so they are applied again before the new tables become visible.
+     */
+    public synchronized void rebuild(Map<UUID, String> names, long startVersion) {
+        if (startVersion < this.rebuiltVersion) {
+            return; // overtaken by a rebuild which started later, changes it relied on were already dropped
+        }
+
+        Tables tables = new Tables();
+        names.forEach(tables::put);
+        this.changes.forEach((uuid, change) -> {
+            if (change.version() > startVersion) {
+                tables.remove(uuid);
+                tables.put(uuid, change.name());
+            }
+        });
+        this.changes.values().removeIf(change -> change.version() <= startVersion);
+        this.tables = tables;
+        this.rebuiltVersion = startVersion;
+        this.loaded = true;
+    }
+
+    public synchronized void put(UUID uuid, String name) {
+        this.changes.put(uuid, new Change(++this.version, name));
+        this.tables.remove(uuid);
+        this.tables.put(uuid, name);
+    }
+
+    public synchronized void remove(UUID uuid) {
+        this.changes.put(uuid, new Change(++this.version, null));
+        this.tables.remove(uuid);
+    }
+
+    public int size() {
+        return this.tables.names.size();
+    }
+
+    /**
+     * Returns all matching entries in given order.
+     */
+    public List<Entry> search(String query, Comparator<Entry> order) {
+        Tables tables = this.tables;
+        String normalized = normalize(query);
+
+        Collection<UUID> candidates;
+        boolean verify = false;
+        if (normalized.length() >= 2 && normalized.startsWith("\"") && normalized.endsWith("\"")) {
+            candidates = tables.byName.getOrDefault(normalized.substring(1, normalized.length() - 1), Set.of());
+        } else if (normalized.endsWith("*")) {
+            String prefix = normalized.substring(0, normalized.length() - 1);
+            candidates = new ArrayList<>();
+            for (Set<UUID> uuids : tables.byName.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+                candidates.addAll(uuids);
+            }
+        } else if (normalized.length() >= GRAM_LENGTH) {
+            candidates = tables.intersectGrams(normalized);
+            verify = true;
+        } else {
+            // Too short for trigrams, names are still cheaper to scan here than in database
+            candidates = tables.names.keySet();
+            verify = true;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (UUID uuid : candidates) {
+            String name = tables.names.get(uuid);
+            if (name != null && (!verify || normalize(name).contains(normalized))) {
+                entries.add(new Entry(uuid, name));
+            }
+        }
+        entries.sort(order);
+        return entries;
+    }
+
+    /**
+     * Returns index of first entry after the cursor in the sorted entries.
+     */
+    public static int seek(List<Entry> entries, Comparator<Entry> order, Entry cursor) {
+        int index = Collections.binarySearch(entries, cursor, order);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public record Entry(UUID uuid, String name) {
+    }
+
+    private record Change(long version, String name) {
+    }
+
+    private static class Tables {
+        private final Map<UUID, String> names = new ConcurrentHashMap<>();
+        private final NavigableMap<String, Set<UUID>> byName = new ConcurrentSkipListMap<>();
+        private final Map<String, Set<UUID>> grams = new ConcurrentHashMap<>();
+
+        private void put(UUID uuid, String name) {
+            if (name == null) {
+                return;
+            }
+
+            String normalized = normalize(name);
+            this.names.put(uuid, name);
+            this.byName.computeIfAbsent(normalized, key -> ConcurrentHashMap.newKeySet()).add(uuid);
+            for (int i = 0; i + GRAM_LENGTH <= normalized.length(); i++) {
+                this.grams.computeIfAbsent(normalized.substring(i, i + GRAM_LENGTH), key -> ConcurrentHashMap.newKeySet()).add(uuid);
+            }
+        }
+
+        private void remove(UUID uuid) {
+            String name = this.names.remove(uuid);
+            if (name == null) {
+                return;
+            }
+
+            String normalized = normalize(name);
+            this.byName.computeIfPresent(normalized, (key, uuids) -> uuids.remove(uuid) && uuids.isEmpty() ? null : uuids);
+            for (int i = 0; i + GRAM_LENGTH <= normalized.length(); i++) {
+                this.grams.computeIfPresent(normalized.substring(i, i + GRAM_LENGTH), (key, uuids) -> uuids.remove(uuid) && uuids.isEmpty() ? null : uuids);
+            }
+        }
+
+        private Collection<UUID> intersectGrams(String query) {
+            // Start from the rarest trigram, every match must contain all of them
+            List<Set<UUID>> postings = new ArrayList<>();
+            for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+                Set<UUID> uuids = this.grams.get(query.substring(i, i + GRAM_LENGTH));
+                if (uuids == null) {
+                    return List.of();
+                }
+                postings.add(uuids);
+            }
+            postings.sort(Comparator.comparingInt(Set::size));
+
+            List<UUID> result = new ArrayList<>();
+            for (UUID uuid : postings.get(0)) {
+                boolean matches = true;
+                for (int i = 1; i < postings.size() && matches; i++) {
+                    matches = postings.get(i).contains(uuid);
+                }
+                if (matches) {
+                    result.add(uuid);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -15,22 +15,319 @@
 
 package dev.waterdog.flowassets.repositories;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.vaadin.flow.data.provider.QuerySortOrder;
+import com.vaadin.flow.data.provider.SortDirection;
+import dev.waterdog.flowassets.metrics.FlowMetrics;
+import dev.waterdog.flowassets.repositories.storage.BlobReferences;
 import dev.waterdog.flowassets.structure.FlowAsset;
+import dev.waterdog.flowassets.tracing.FlowTracing;
+import dev.waterdog.flowassets.utils.Bulkheads;
+import dev.waterdog.flowassets.utils.CacheableMap;
+import io.quarkus.hibernate.orm.panache.PanacheQuery;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import lombok.Getter;
+import lombok.extern.jbosslog.JBossLog;
+import org.hibernate.Hibernate;
+import org.hibernate.jpa.QueryHints;
+
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+@JBossLog
 @ApplicationScoped
 public class AssetsRepository extends AbstractRepository<FlowAsset> {
 
+    @Inject
+    MetadataCacheSettings cacheSettings;
+
+    @Inject
+    ReactiveAssetsRepository reactiveRepository;
+
+    @Getter
+    @Inject
+    Bulkheads bulkheads;
+
+    @Inject
+    FlowMetrics metrics;
+
+    @Getter
+    @Inject
+    FlowTracing tracing;
+
+    @Getter
+    @Inject
+    BlobReferences blobReferences;
+
+    // Read-only views for API lookups, entities must not be modified
+    private CacheableMap<String, Optional<FlowAsset>> nameCache;
+    private CacheableMap<UUID, Optional<FlowAsset>> uuidCache;
+    private CacheableMap<String, List<FlowAsset>> groupCache;
+
+    private final AssetNameIndex nameIndex = new AssetNameIndex();
+    // Grid asks for count and first page with the same filter, both are served from one search
+    private final CacheableMap<String, List<AssetNameIndex.Entry>> searchResults = CacheableMap.<String, List<AssetNameIndex.Entry>>builder()
+            .name("asset-search")
+            .timeout(30)
+            .unit(TimeUnit.SECONDS)
+            .maximumSize(64)
+            .build();
+
+    @PostConstruct
+    void initCaches() {
+        this.nameCache = this.cacheSettings.createCache("asset-name");
+        this.uuidCache = this.cacheSettings.createCache("asset-uuid");
+        this.groupCache = this.cacheSettings.createCache("group-assets");
+
+        for (CacheableMap<?, ?> cache : List.of(this.nameCache, this.uuidCache, this.groupCache, this.searchResults)) {
+            this.metrics.monitorCache(cache.getName(), cache, CacheableMap::stats);
+        }
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        this.reloadNameIndex();
+    }
+
+    /**
+     * Picks up assets changed outside this instance, e.g. by another server node.
+     */
+    @Scheduled(every = "{flowassets.search.refresh-interval}", delayed = "{flowassets.search.refresh-interval}")
+    void reloadNameIndex() {
+        long version = this.nameIndex.getVersion();
+        Map<UUID, String> names = new HashMap<>();
+        for (Object[] row : this.loadNames()) {
+            names.put((UUID) row[0], (String) row[1]);
+        }
+        this.nameIndex.rebuild(names, version);
+        this.searchResults.clear();
+        log.debug("Indexed " + names.size() + " asset names");
+    }
+
+    @Transactional
+    public List<Object[]> loadNames() {
+        return this.getEntityManager().createQuery("select a.uuid, a.assetName from FlowAsset a", Object[].class)
+                .getResultList();
+    }
+
     @Override
     public String nameIdentifier() {
         return "asset_name";
     }
 
+    @Override
+    protected String idIdentifier() {
+        return "uuid";
+    }
+
+    @Override
+    protected Object getNameValue(FlowAsset value) {
+        return value.getAssetName();
+    }
+
+    @Transactional
+    @Override
+    public FlowAsset getByName(String name) {
+        return this.find(this.nameIdentifier(), name.trim())
+                .withHint(QueryHints.HINT_FETCHGRAPH, this.getEntityManager().getEntityGraph(FlowAsset.GRAPH_INFO))
+                .firstResult();
+    }
+
     @Transactional
     public FlowAsset findByUuid(String uuid) {
-        return this.find("uuid", UUID.fromString(uuid)).firstResult();
+        return this.find("uuid", UUID.fromString(uuid))
+                .withHint(QueryHints.HINT_FETCHGRAPH, this.getEntityManager().getEntityGraph(FlowAsset.GRAPH_INFO))
+                .firstResult();
+    }
+
+    @Override
+    protected List<FlowAsset> fetchPage(PanacheQuery<FlowAsset> query) {
+        List<FlowAsset> assets = query.withHint(QueryHints.HINT_FETCHGRAPH, this.getEntityManager().getEntityGraph(FlowAsset.GRAPH_INFO))
+                .list();
+        // Memberships are loaded in batches, fetching them with the page would make Hibernate paginate in memory
+        for (FlowAsset asset : assets) {
+            Hibernate.initialize(asset.getGroups());
+        }
+        return assets;
+    }
+
+    /**
+     * Loads all assets of the group together with their deploy paths in a single query.
+     */
+    @Transactional
+    public List<FlowAsset> findByGroupName(String groupName) {
+        return this.getEntityManager().createQuery("select a from FlowAsset a " +
+                        "left join fetch a.deployPath " +
+                        "join a.groups g where g.name = ?1", FlowAsset.class)
+                .setParameter(1, groupName)
+                .getResultList();
+    }
+
+    public FlowAsset getCachedByName(String name) {
+        return this.nameCache.computeIfAbsent(name.trim(), key -> Optional.ofNullable(this.getByName(key))).orElse(null);
+    }
+
+    public FlowAsset getCachedByUuid(String uuid) {
+        return this.uuidCache.computeIfAbsent(UUID.fromString(uuid), key -> Optional.ofNullable(this.findByUuid(key.toString()))).orElse(null);
+    }
+
+    public List<FlowAsset> getCachedByGroupName(String groupName) {
+        return this.groupCache.computeIfAbsent(groupName, key -> List.copyOf(this.findByGroupName(key)));
+    }
+
+    /**
+     * Non-blocking variant of {@link #getCachedByName(String)}. Cache misses are loaded by the reactive client
+     * when enabled, otherwise on a worker thread.
+     */
+    public Uni<FlowAsset> getCachedByNameAsync(String name) {
+        String key = name.trim();
+        return this.getCachedAsync(this.nameCache, key, () -> this.reactiveRepository.findByName(key), () -> this.getByName(key));
+    }
+
+    public Uni<FlowAsset> getCachedByUuidAsync(String uuid) {
+        return Uni.createFrom().deferred(() -> {
+            UUID key = UUID.fromString(uuid);
+            return this.getCachedAsync(this.uuidCache, key, () -> this.reactiveRepository.findByUuid(key), () -> this.findByUuid(key.toString()));
+        });
+    }
+
+    public Uni<List<FlowAsset>> getCachedByGroupNameAsync(String groupName) {
+        List<FlowAsset> cached = this.groupCache.getIfPresent(groupName);
+        if (cached != null) {
+            return Uni.createFrom().item(cached);
+        }
+
+        if (!this.reactiveRepository.isEnabled()) {
+            return Uni.createFrom().item(() -> this.getCachedByGroupName(groupName))
+                    .runSubscriptionOn(this.bulkheads.getMetadata());
+        }
+        return Uni.createFrom().deferred(() -> {
+            long generation = this.groupCache.getGeneration();
+            return this.reactiveRepository.findByGroupName(groupName)
+                    .map(List::copyOf)
+                    .invoke(assets -> this.groupCache.putIfGeneration(groupName, assets, generation));
+        });
+    }
+
+    private <K> Uni<FlowAsset> getCachedAsync(CacheableMap<K, Optional<FlowAsset>> cache, K key,
+                                             Supplier<Uni<FlowAsset>> reactiveLoader, Supplier<FlowAsset> blockingLoader) {
+        Optional<FlowAsset> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return Uni.createFrom().item(cached.orElse(null));
+        }
+
+        if (!this.reactiveRepository.isEnabled()) {
+            return Uni.createFrom().item(() -> cache.computeIfAbsent(key, k -> Optional.ofNullable(blockingLoader.get())).orElse(null))
+                    .runSubscriptionOn(this.bulkheads.getMetadata());
+        }
+        return Uni.createFrom().deferred(() -> {
+            // Asset changed while loading must not be cached again after invalidation
+            long generation = cache.getGeneration();
+            return reactiveLoader.get().invoke(asset -> cache.putIfGeneration(key, Optional.ofNullable(asset), generation));
+        });
+    }
+
+    public void invalidateCaches() {
+        this.nameCache.clear();
+        this.uuidCache.clear();
+        this.groupCache.clear();
+    }
+
+    public Map<String, CacheStats> getCacheStats() {
+        return Map.of(
+                "asset-name", this.nameCache.stats(),
+                "asset-uuid", this.uuidCache.stats(),
+                "group-assets", this.groupCache.stats());
+    }
+
+    @Override
+    protected void onChange() {
+        this.invalidateCaches();
+    }
+
+    @Override
+    protected List<FlowAsset> findPage(String filter, List<QuerySortOrder> sortOrders, PageCursor after, int offset, int limit) {
+        if (filter == null || !this.nameIndex.isLoaded()) {
+            return super.findPage(filter, sortOrders, after, offset, limit);
+        }
+
+        List<QuerySortOrder> orders = this.resolveSortOrders(sortOrders);
+        if (!this.supportsKeyset(orders)) {
+            return super.findPage(filter, sortOrders, after, offset, limit);
+        }
+
+        Comparator<AssetNameIndex.Entry> order = orders.isEmpty() ? AssetNameIndex.BY_UUID : AssetNameIndex.BY_NAME;
+        if (!orders.isEmpty() && orders.get(0).getDirection() == SortDirection.DESCENDING) {
+            order = order.reversed();
+        }
+
+        List<AssetNameIndex.Entry> entries = this.search(filter, order, orders.isEmpty() ? "uuid" : orders.get(0).getDirection().name());
+        int start = after == null ? offset : AssetNameIndex.seek(entries, order, new AssetNameIndex.Entry((UUID) after.id(), (String) after.sortValue()));
+        if (start >= entries.size() || limit <= 0) {
+            return List.of();
+        }
+
+        List<UUID> uuids = new ArrayList<>();
+        for (AssetNameIndex.Entry entry : entries.subList(start, Math.min(entries.size(), start + limit))) {
+            uuids.add(entry.uuid());
+        }
+
+        Map<UUID, FlowAsset> assets = new HashMap<>();
+        for (FlowAsset asset : this.fetchPage(this.find("uuid in ?1", uuids))) {
+            assets.put(asset.getUuid(), asset);
+        }
+
+        List<FlowAsset> page = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) {
+            FlowAsset asset = assets.get(uuid);
+            if (asset != null) { // removed by another node since last reload
+                page.add(asset);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public long countByName(String name) {
+        if (!this.nameIndex.isLoaded()) {
+            return super.countByName(name);
+        }
+        return this.search(name, AssetNameIndex.BY_UUID, "uuid").size();
+    }
+
+    private List<AssetNameIndex.Entry> search(String query, Comparator<AssetNameIndex.Entry> order, String orderKey) {
+        return this.searchResults.computeIfAbsent(orderKey + "\n" + query.trim(), key -> this.nameIndex.search(query, order));
+    }
+
+    @Transactional
+    @Override
+    public FlowAsset save(FlowAsset value) {
+        FlowAsset asset = super.save(value);
+        UUID uuid = asset.getUuid();
+        String name = asset.getAssetName();
+        this.afterCommit(() -> {
+            this.nameIndex.put(uuid, name);
+            this.searchResults.clear();
+        });
+        return asset;
+    }
+
+    @Transactional
+    public long countContentReferences(String contentHash, String repository) {
+        return this.count("contentHash = ?1 and assetRepository = ?2 and contentAddressed = true", contentHash, repository);
     }
 
     @Transactional
@@ -45,5 +342,12 @@ public class AssetsRepository extends AbstractRepository<FlowAsset> {
             this.persist(value);
         }
         this.delete(value);
+        this.notifyChange();
+
+        UUID uuid = value.getUuid();
+        this.afterCommit(() -> {
+            this.nameIndex.remove(uuid);
+            this.searchResults.clear();
+        });
     }
 }
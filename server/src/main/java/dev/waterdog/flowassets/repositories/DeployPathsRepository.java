@@ -19,16 +19,30 @@ import dev.waterdog.flowassets.structure.DeployPath;
 import org.hibernate.Hibernate;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 import javax.transaction.Transactional;
 
 @ApplicationScoped
 public class DeployPathsRepository extends AbstractRepository<DeployPath> {
 
+    @Inject
+    AssetsRepository assetsRepository;
+
+    @Override
+    protected void onChange() {
+        this.assetsRepository.invalidateCaches(); // cached assets hold their deploy path
+    }
+
     @Override
     public String nameIdentifier() {
         return "name";
     }
 
+    @Override
+    protected Object getNameValue(DeployPath value) {
+        return value.getName();
+    }
+
     @Transactional
     public DeployPath getInitialized(DeployPath deployPath) {
         DeployPath merge = this.getEntityManager().merge(deployPath);
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.repositories;
+
+import dev.waterdog.flowassets.utils.CacheableMap;
+import lombok.Getter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@Getter
+@Singleton
+public class MetadataCacheSettings {
+
+    @Inject
+    @ConfigProperty(name = "flowassets.cache.metadata-ttl", defaultValue = "30s")
+    Duration ttl;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.cache.metadata-size", defaultValue = "10000")
+    long maximumSize;
+
+    public <K, V> CacheableMap<K, V> createCache(String name) {
+        return CacheableMap.<K, V>builder()
+                .name(name)
+                .timeout((int) this.ttl.toMillis())
+                .unit(TimeUnit.MILLISECONDS)
+                .maximumSize(this.maximumSize)
+                .build();
+    }
+}
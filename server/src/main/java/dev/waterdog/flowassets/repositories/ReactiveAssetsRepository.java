@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.repositories;
+
+import dev.waterdog.flowassets.structure.AssetGroup;
+import dev.waterdog.flowassets.structure.DeployPath;
+import dev.waterdog.flowassets.structure.FlowAsset;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.mysqlclient.MySQLPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
+import lombok.Getter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Read-only queries for API metadata lookups running on the non-blocking MySQL client,
+ * so they neither occupy worker threads nor JDBC connections.
+ * Returned entities are detached and must not be saved.
+ */
+@ApplicationScoped
+public class ReactiveAssetsRepository {
+    private static final String SELECT_ASSET = "SELECT a.uuid, a.asset_name, a.asset_location, a.asset_repository, " +
+            "a.content_hash, a.content_addressed, a.content_size, a.last_modified, d.id, d.name, d.deploy_path " +
+            "FROM assets a LEFT JOIN deploy_paths d ON d.id = a.path_id ";
+
+    @Getter
+    @Inject
+    @ConfigProperty(name = "flowassets.api.reactive-reads", defaultValue = "false")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "quarkus.datasource.reactive.url")
+    Optional<String> url;
+
+    // Resolved lazily, pool is only created when reactive reads are enabled
+    @Inject
+    Instance<MySQLPool> pool;
+
+    void onStart(@Observes StartupEvent event) {
+        // Reactive client would silently connect to its localhost default otherwise
+        if (this.enabled && this.url.isEmpty()) {
+            throw new IllegalStateException("Reactive reads are enabled, but MYSQL_REACTIVE_URL is not set");
+        }
+    }
+
+    public Uni<FlowAsset> findByName(String name) {
+        return this.pool.get().preparedQuery(SELECT_ASSET + "WHERE a.asset_name = ?")
+                .execute(Tuple.of(name))
+                .map(ReactiveAssetsRepository::firstAsset);
+    }
+
+    public Uni<FlowAsset> findByUuid(UUID uuid) {
+        return this.pool.get().preparedQuery(SELECT_ASSET + "WHERE a.uuid = ?")
+                .execute(Tuple.of(toBuffer(uuid)))
+                .map(ReactiveAssetsRepository::firstAsset);
+    }
+
+    public Uni<List<FlowAsset>> findByGroupName(String groupName) {
+        return this.pool.get().preparedQuery(SELECT_ASSET + "JOIN groups_join j ON j.asset_id = a.uuid " +
+                        "JOIN asset_groups g ON g.id = j.group_id WHERE g.name = ?")
+                .execute(Tuple.of(groupName))
+                .map(rows -> {
+                    List<FlowAsset> assets = new ArrayList<>(rows.size());
+                    for (Row row : rows) {
+                        assets.add(toAsset(row));
+                    }
+                    return assets;
+                });
+    }
+
+    public Uni<AssetGroup> findGroupByName(String name) {
+        return this.pool.get().preparedQuery("SELECT id, name FROM asset_groups WHERE name = ?")
+                .execute(Tuple.of(name))
+                .map(rows -> {
+                    if (rows.size() == 0) {
+                        return null;
+                    }
+
+                    Row row = rows.iterator().next();
+                    AssetGroup group = new AssetGroup();
+                    group.id = row.getLong("id");
+                    group.setName(row.getString("name"));
+                    return group;
+                });
+    }
+
+    private static FlowAsset firstAsset(RowSet<Row> rows) {
+        return rows.size() == 0 ? null : toAsset(rows.iterator().next());
+    }
+
+    private static FlowAsset toAsset(Row row) {
+        FlowAsset asset = new FlowAsset();
+        asset.setUuid(toUuid(row.getBuffer("uuid")));
+        asset.setAssetName(row.getString("asset_name"));
+        asset.setAssetLocation(row.getString("asset_location"));
+        asset.setAssetRepository(row.getString("asset_repository"));
+        asset.setContentHash(row.getString("content_hash"));
+        // BIT columns are returned as numbers
+        Object contentAddressed = row.getValue("content_addressed");
+        asset.setContentAddressed(contentAddressed instanceof Number number ? number.longValue() != 0 : Boolean.TRUE.equals(contentAddressed));
+        asset.setContentSize(row.getLong("content_size"));
+
+        // Hibernate stores instants in JVM time zone
+        LocalDateTime lastModified = row.getLocalDateTime("last_modified");
+        asset.setLastModified(lastModified == null ? null : lastModified.atZone(ZoneId.systemDefault()).toInstant());
+
+        Long pathId = row.getLong("id");
+        if (pathId != null) {
+            DeployPath deployPath = new DeployPath();
+            deployPath.id = pathId;
+            deployPath.setName(row.getString("name"));
+            deployPath.setPath(row.getString("deploy_path"));
+            asset.setDeployPath(deployPath);
+        }
+        return asset;
+    }
+
+    private static Buffer toBuffer(UUID uuid) {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        return Buffer.buffer(buffer.array());
+    }
+
+    private static UUID toUuid(Buffer buffer) {
+        return new UUID(buffer.getLong(0), buffer.getLong(8));
+    }
+}
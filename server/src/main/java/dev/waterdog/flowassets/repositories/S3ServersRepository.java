@@ -15,15 +15,49 @@
 
 package dev.waterdog.flowassets.repositories;
 
+import dev.waterdog.flowassets.repositories.storage.StoragesRepository;
 import dev.waterdog.flowassets.structure.S3ServerData;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import java.util.Collection;
+import java.util.List;
 
 @ApplicationScoped
 public class S3ServersRepository extends AbstractRepository<S3ServerData> {
 
+    @Inject
+    StoragesRepository storages;
+
     @Override
     public String nameIdentifier() {
         return "name";
     }
+
+    @Override
+    protected Object getNameValue(S3ServerData value) {
+        return value.getServerName();
+    }
+
+    @Override
+    @Transactional
+    public S3ServerData save(S3ServerData value) {
+        S3ServerData saved = super.save(value);
+        // Loaded storage keeps using old client and settings otherwise
+        this.afterCommit(() -> this.storages.invalidateS3Server(saved));
+        return saved;
+    }
+
+    @Override
+    @Transactional
+    public void remove(S3ServerData value) {
+        super.remove(value);
+        this.afterCommit(() -> this.storages.invalidateS3Server(value));
+    }
+
+    @Transactional
+    public List<S3ServerData> findByNames(Collection<String> names) {
+        return this.list("serverName in ?1", names);
+    }
 }
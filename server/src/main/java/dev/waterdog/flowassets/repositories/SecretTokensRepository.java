@@ -16,22 +16,73 @@
 package dev.waterdog.flowassets.repositories;
 
 import dev.waterdog.flowassets.structure.SecretToken;
-import dev.waterdog.flowassets.utils.CacheableMap;
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import lombok.extern.jbosslog.JBossLog;
 
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 import javax.transaction.Transactional;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 
+@JBossLog
 @Singleton
 public class SecretTokensRepository implements PanacheRepository<SecretToken> {
 
-    private final Map<String, SecretToken> tokens = CacheableMap.<String, SecretToken>builder()
-            .timeout(10)
-            .unit(TimeUnit.MINUTES)
-            .build();
+    @Inject
+    TransactionSynchronizationRegistry transactionRegistry;
+
+    // Index of all tokens by hash. It is authoritative, so unknown tokens never reach database.
+    private volatile Map<String, SecretToken> tokens = new ConcurrentHashMap<>();
+
+    private final Object reloadLock = new Object();
+    // Committed local changes by token hash, null token marks removal. Guarded by this.
+    private final Map<String, TokenChange> changes = new HashMap<>();
+    private long version;
+
+    void onStart(@Observes StartupEvent event) {
+        this.reloadTokens();
+    }
+
+    /**
+     * Picks up tokens changed outside this instance, e.g. by another server node.
+     */
+    @Scheduled(every = "{flowassets.tokens.refresh-interval}", delayed = "{flowassets.tokens.refresh-interval}")
+    void reloadTokens() {
+        synchronized (this.reloadLock) {
+            long startVersion;
+            synchronized (this) {
+                startVersion = this.version;
+            }
+
+            Map<String, SecretToken> tokens = new ConcurrentHashMap<>();
+            for (SecretToken token : this.loadAll()) {
+                if (token.getTokenHash() != null) {
+                    tokens.put(token.getTokenHash(), token);
+                }
+            }
+
+            synchronized (this) {
+                // Changes committed while loading might be missing from the loaded tokens
+                this.changes.forEach((tokenHash, change) -> {
+                    if (change.version() > startVersion) {
+                        apply(tokens, tokenHash, change.token());
+                    }
+                });
+                this.changes.values().removeIf(change -> change.version() <= startVersion);
+                this.tokens = tokens;
+            }
+            log.debug("Loaded " + tokens.size() + " secret tokens");
+        }
+    }
 
     @Transactional
     public List<SecretToken> loadAll() {
@@ -50,7 +101,7 @@ public class SecretTokensRepository implements PanacheRepository<SecretToken> {
         } else {
             this.persist(this.getEntityManager().merge(token));
         }
-        this.tokens.put(token.getTokenHash(), token);
+        this.afterCommit(token.getTokenHash(), token);
     }
 
     @Transactional
@@ -60,14 +111,55 @@ public class SecretTokensRepository implements PanacheRepository<SecretToken> {
         } else {
             this.delete(this.getEntityManager().merge(token));
         }
-        this.tokens.remove(token.getTokenHash());
+        this.afterCommit(token.getTokenHash(), null);
     }
 
+    /**
+     * Token must not authorize requests before it is committed, nor stay in the index when the transaction rolls back.
+     */
+    private void afterCommit(String tokenHash, SecretToken token) {
+        if (tokenHash == null) {
+            return;
+        }
+
+        this.transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    SecretTokensRepository.this.applyChange(tokenHash, token);
+                }
+            }
+        });
+    }
+
+    private synchronized void applyChange(String tokenHash, SecretToken token) {
+        this.changes.put(tokenHash, new TokenChange(++this.version, token));
+        apply(this.tokens, tokenHash, token);
+    }
+
+    private static void apply(Map<String, SecretToken> tokens, String tokenHash, SecretToken token) {
+        if (token == null) {
+            tokens.remove(tokenHash);
+        } else {
+            tokens.put(tokenHash, token);
+        }
+    }
+
+    /**
+     * Looks up token in memory only, so it is safe to call from event loop.
+     */
     public SecretToken getCachedToken(String tokenString) {
         String tokenHash = SecretToken.createTokenHash(tokenString);
         if (tokenHash == null) {
             return null;
         }
-        return this.tokens.computeIfAbsent(tokenHash, this::findByHash);
+        return this.tokens.get(tokenHash);
+    }
+
+    private record TokenChange(long version, SecretToken token) {
     }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.repositories.storage;
+
+import lombok.Getter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Serializes deletion of deduplicated blobs with uploads of the same content on this node.
+ * An upload which finds an existing blob only references it once the asset is saved, so the blob
+ * must not be deleted in between. Uploads on other nodes are covered by the grace period
+ * before unreferenced blobs are deleted and the references are counted again.
+ */
+@Singleton
+public class BlobReferences {
+
+    @Getter
+    @Inject
+    @ConfigProperty(name = "flowassets.storage.blob-grace-period", defaultValue = "10m")
+    Duration gracePeriod;
+
+    // Both guarded by this
+    private final Map<String, Integer> uploads = new HashMap<>();
+    private final Map<String, CompletableFuture<Void>> deletions = new HashMap<>();
+
+    /**
+     * Registers upload which may reuse an existing blob, {@link #endUpload(String, String)} must follow once
+     * the asset was saved or the upload failed.
+     * @return future completing once a deletion of the blob which is already running has finished
+     */
+    public synchronized CompletableFuture<Void> beginUpload(String repository, String contentHash) {
+        String key = createKey(repository, contentHash);
+        this.uploads.merge(key, 1, Integer::sum);
+        CompletableFuture<Void> deletion = this.deletions.get(key);
+        return deletion == null ? CompletableFuture.completedFuture(null) : deletion;
+    }
+
+    public synchronized void endUpload(String repository, String contentHash) {
+        this.uploads.computeIfPresent(createKey(repository, contentHash), (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Runs deletion unless the blob is being uploaded or deleted already. Uploads starting meanwhile
+     * wait until the deletion has finished, so they do not skip the transfer of a blob which is about to disappear.
+     * @return whether the deletion ran and reported the blob as deleted
+     */
+    public CompletableFuture<Boolean> delete(String repository, String contentHash, Supplier<CompletableFuture<Boolean>> deletion) {
+        String key = createKey(repository, contentHash);
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        synchronized (this) {
+            if (this.uploads.containsKey(key) || this.deletions.containsKey(key)) {
+                return CompletableFuture.completedFuture(false);
+            }
+            this.deletions.put(key, completion);
+        }
+
+        CompletableFuture<Boolean> future;
+        try {
+            future = deletion.get();
+        } catch (Throwable t) {
+            future = CompletableFuture.failedFuture(t);
+        }
+        return future.whenComplete((deleted, error) -> {
+            synchronized (this) {
+                this.deletions.remove(key, completion);
+            }
+            completion.complete(null);
+        });
+    }
+
+    private static String createKey(String repository, String contentHash) {
+        return repository + "\n" + contentHash;
+    }
+}
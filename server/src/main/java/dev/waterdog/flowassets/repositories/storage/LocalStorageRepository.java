@@ -15,17 +15,16 @@
 
 package dev.waterdog.flowassets.repositories.storage;
 
+import dev.waterdog.flowassets.metrics.FlowMetrics;
 import dev.waterdog.flowassets.structure.FileSnapshot;
 import dev.waterdog.flowassets.structure.RepositoryType;
-import dev.waterdog.flowassets.utils.Streams;
+import dev.waterdog.flowassets.utils.Bulkheads;
 import io.netty.buffer.ByteBufInputStream;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.*;
 import java.util.Comparator;
 import java.util.concurrent.CompletableFuture;
@@ -37,41 +36,104 @@ public class LocalStorageRepository implements StorageRepositoryImpl {
     @ConfigProperty(name = "flowassets.local-dir")
     String localPath;
 
+    @Inject
+    @ConfigProperty(name = "flowassets.storage.deduplicate", defaultValue = "false")
+    boolean deduplicate;
+
+    @Inject
+    Bulkheads bulkheads;
+
+    @Inject
+    FlowMetrics metrics;
+
     @Override
     public CompletableFuture<Void> saveFileSnapshot(FileSnapshot snapshot) {
-        return CompletableFuture.runAsync(() -> {
+        return this.metrics.timeUpload(this.getType(), this.getServerName(), snapshot.getUuid(), snapshot.getContentLength(), () -> this.bulkheads.getFileIo().run(() -> {
             Path path = Paths.get(this.localPath).resolve(snapshot.getUuid() + "/").resolve(snapshot.getFileName());
-            try (ByteBufInputStream inputStream = new ByteBufInputStream(snapshot.getContent().getByteBuf()) ) {
-                if (!Files.exists(path)) {
+            try {
+                if (!Files.exists(path.getParent())) {
                     Files.createDirectories(path.getParent());
                 }
 
-                Files.copy(inputStream, path, StandardCopyOption.REPLACE_EXISTING);
+                if (this.deduplicate && snapshot.getContentHash() != null) {
+                    this.saveBlob(snapshot, path);
+                } else {
+                    this.writeFile(snapshot, path);
+                }
             } catch (IOException e) {
-                throw new IllegalStateException("Failed to write " + snapshot.getUuid() + "/" + snapshot.getFileName());
+                throw new IllegalStateException("Failed to write " + snapshot.getUuid() + "/" + snapshot.getFileName(), e);
+            }
+        }));
+    }
+
+    private void saveBlob(FileSnapshot snapshot, Path path) throws IOException {
+        Path blobPath = this.getBlobPath(snapshot.getContentHash());
+        if (!Files.exists(blobPath)) {
+            Files.createDirectories(blobPath.getParent());
+            this.writeFile(snapshot, blobPath);
+        }
+
+        // Asset path is a hard link to the blob, so files can still be served by their name
+        Path tempPath = createTempFile(path);
+        try {
+            // Unique name was only reserved, link needs the path to be free
+            Files.delete(tempPath);
+            try {
+                Files.createLink(tempPath, blobPath);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                Files.copy(blobPath, tempPath);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        snapshot.setContentAddressed(true);
+    }
+
+    private void writeFile(FileSnapshot snapshot, Path path) throws IOException {
+        Path tempPath = createTempFile(path);
+        try {
+            if (snapshot.isFileBacked()) {
+                Files.copy(snapshot.getContentPath(), tempPath, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (ByteBufInputStream inputStream = new ByteBufInputStream(snapshot.getContent().getByteBuf())) {
+                    Files.copy(inputStream, tempPath, StandardCopyOption.REPLACE_EXISTING);
+                }
             }
-        });
+            // Readers must never observe partially written file
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Concurrent writes of the same file each get their own temporary file next to the target,
+     * so the final atomic move stays within one directory.
+     */
+    private static Path createTempFile(Path path) throws IOException {
+        return Files.createTempFile(path.getParent(), path.getFileName() + ".", ".tmp");
     }
 
     @Override
     public CompletableFuture<FileSnapshot> loadSnapshot(String uuid, String fileName) {
-        return CompletableFuture.supplyAsync(() -> {
+        return this.metrics.timeStorage(this.getType(), this.getServerName(), "load", uuid, () -> this.bulkheads.getFileIo().supply(() -> {
             Path path = Paths.get(this.localPath).resolve(uuid + "/").resolve(fileName);
             if (!Files.exists(path)) {
                 return null;
             }
 
-            try (InputStream stream = new BufferedInputStream(Files.newInputStream(path))) {
-                return new FileSnapshot(uuid, fileName, Streams.readToBuffer(stream));
+            try {
+                return new FileSnapshot(uuid, fileName, path, Files.size(path));
             } catch (Exception e) {
                 throw new IllegalStateException("Failed to read " + uuid + "/" + fileName);
             }
-        });
+        }));
     }
 
     @Override
     public CompletableFuture<Void> deleteSnapshots(String uuid) {
-        return CompletableFuture.runAsync(() -> {
+        return this.metrics.timeStorage(this.getType(), this.getServerName(), "delete", uuid, () -> this.bulkheads.getFileIo().run(() -> {
             Path path = Paths.get(this.localPath).resolve(uuid + "/");
             try {
                 if (Files.exists(path)) {
@@ -83,7 +145,35 @@ public class LocalStorageRepository implements StorageRepositoryImpl {
             } catch (IOException e) {
                 throw new IllegalStateException("Failed to delete " + uuid, e);
             }
-        });
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteBlob(String contentHash) {
+        return this.metrics.timeStorage(this.getType(), this.getServerName(), "delete-blob", BLOB_PREFIX + contentHash, () -> this.bulkheads.getFileIo().run(() -> {
+            try {
+                Files.deleteIfExists(this.getBlobPath(contentHash));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to delete blob " + contentHash, e);
+            }
+        }));
+    }
+
+    private Path getBlobPath(String contentHash) {
+        return Paths.get(this.localPath).resolve(BLOB_PREFIX).resolve(contentHash);
+    }
+
+    public Path getSnapshotPath(String uuid, String fileName) {
+        Path root = Paths.get(this.localPath).toAbsolutePath().normalize();
+        Path path = root.resolve(uuid + "/").resolve(fileName).normalize();
+        if (!path.startsWith(root)) {
+            return null; // do not allow escaping local directory
+        }
+        return path;
+    }
+
+    public String getServerName() {
+        return RepositoryType.LOCAL.getSaveName();
     }
 
     @Override
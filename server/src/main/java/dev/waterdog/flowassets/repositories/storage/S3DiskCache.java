@@ -0,0 +1,302 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.repositories.storage;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.waterdog.flowassets.metrics.FlowMetrics;
+import dev.waterdog.flowassets.utils.Bulkheads;
+import dev.waterdog.flowassets.utils.Streams;
+import io.vertx.core.buffer.Buffer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.jbosslog.JBossLog;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Read-through disk cache of S3 objects, bounded by total size of cached files.
+ * Least recently used objects are evicted first.
+ * <p>
+ * Objects are cached together with the content version of their asset. Other server nodes
+ * do not invalidate this cache, so a request for a newer version replaces the cached copy instead.
+ */
+@JBossLog
+@Singleton
+public class S3DiskCache {
+
+    @Inject
+    S3StorageSettings settings;
+
+    @Inject
+    Bulkheads bulkheads;
+
+    @Inject
+    FlowMetrics metrics;
+
+    private Path directory;
+    private long maximumSize;
+
+    // Access ordered, so iteration starts with least recently used object
+    private final LinkedHashMap<String, CachedObject> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<CachedObject>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong fileCounter = new AtomicLong();
+    private long totalSize;
+
+    @Getter
+    private final AtomicLong hits = new AtomicLong();
+    @Getter
+    private final AtomicLong misses = new AtomicLong();
+    @Getter
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        if (!this.settings.isDiskCacheEnabled()) {
+            return;
+        }
+
+        this.metrics.monitorCache("s3-disk", this, S3DiskCache::stats);
+        this.directory = Paths.get(this.settings.getDiskCacheDir()).toAbsolutePath().normalize();
+        this.maximumSize = this.settings.getDiskCacheMaxSize().asLongValue();
+        try {
+            // Objects might have changed while server was down, start with empty cache
+            if (Files.exists(this.directory)) {
+                try (Stream<Path> files = Files.walk(this.directory)) {
+                    files.sorted(Comparator.reverseOrder())
+                            .filter(path -> !path.equals(this.directory))
+                            .map(Path::toFile)
+                            .forEach(File::delete);
+                }
+            }
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to prepare S3 disk cache in " + this.directory, e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.directory != null;
+    }
+
+    /**
+     * Returns lease of cached object, downloading it first when it is not cached yet or the cached
+     * copy has different version. Leased file is neither evicted nor deleted by invalidation until
+     * the lease is released. Concurrent requests for the same object share a single download.
+     */
+    public CompletableFuture<Lease> getFile(S3StorageRepository storage, String key, String version) {
+        return this.fetch(storage, key, version).thenCompose(object -> {
+            synchronized (this) {
+                if (!object.isRemoved()) {
+                    object.leases++;
+                    return CompletableFuture.completedFuture(new Lease(object));
+                }
+            }
+            // Invalidated before it could be leased
+            return this.getFile(storage, key, version);
+        });
+    }
+
+    private CompletableFuture<CachedObject> fetch(S3StorageRepository storage, String key, String version) {
+        String id = createId(storage.getServerName(), key);
+        synchronized (this) {
+            CachedObject object = this.entries.get(id);
+            if (object != null && object.getVersion().equals(version)) {
+                this.hits.incrementAndGet();
+                return CompletableFuture.completedFuture(object);
+            }
+            if (object != null) {
+                // Object was replaced, possibly through another server node
+                this.entries.remove(id);
+                this.totalSize -= object.getSize();
+                this.remove(object);
+            }
+        }
+
+        // Running downloads are tracked per version, so an outdated one is never shared
+        String loadingId = id + "\n" + version;
+        CompletableFuture<CachedObject> future = new CompletableFuture<>();
+        CompletableFuture<CachedObject> existing = this.loading.putIfAbsent(loadingId, future);
+        if (existing != null) {
+            this.hits.incrementAndGet();
+            return existing;
+        }
+
+        this.misses.incrementAndGet();
+        this.load(storage, key, version, id, loadingId, future).whenComplete((object, error) -> {
+            this.loading.remove(loadingId, future);
+            if (error == null) {
+                future.complete(object);
+            } else {
+                future.completeExceptionally(error);
+            }
+        });
+        return future;
+    }
+
+    private CompletableFuture<CachedObject> load(S3StorageRepository storage, String key, String version, String id,
+                                                 String loadingId, CompletableFuture<CachedObject> future) {
+        // Every download gets its own file, previous copy may still be leased
+        Path path = this.directory.resolve(Streams.sha256(Buffer.buffer(id)) + "." + this.fileCounter.incrementAndGet());
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        return storage.getObject(key, AsyncResponseTransformer.toFile(tempPath)).thenComposeAsync(response -> {
+            synchronized (this) {
+                if (this.loading.get(loadingId) != future) {
+                    // Object was invalidated while downloading, content might be outdated
+                    tempPath.toFile().delete();
+                    return this.fetch(storage, key, version);
+                }
+
+                try {
+                    Files.setLastModifiedTime(tempPath, FileTime.from(response.lastModified()));
+                    Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                CachedObject object = new CachedObject(storage.getServerName(), key, version, path, response.contentLength());
+                this.add(id, object);
+                return CompletableFuture.completedFuture(object);
+            }
+        }, this.bulkheads.getFileIo()).whenComplete((object, error) -> {
+            if (error != null) {
+                tempPath.toFile().delete();
+            }
+        });
+    }
+
+    private void add(String id, CachedObject object) {
+        CachedObject previous = this.entries.put(id, object);
+        if (previous != null) {
+            this.totalSize -= previous.getSize();
+            this.remove(previous);
+        }
+        this.totalSize += object.getSize();
+
+        Iterator<Map.Entry<String, CachedObject>> iterator = this.entries.entrySet().iterator();
+        while (this.totalSize > this.maximumSize && iterator.hasNext()) {
+            Map.Entry<String, CachedObject> entry = iterator.next();
+            if (entry.getValue() == object || entry.getValue().leases > 0) {
+                continue; // keep object which is just being requested or served
+            }
+            iterator.remove();
+            this.totalSize -= entry.getValue().getSize();
+            this.evictions.incrementAndGet();
+            this.remove(entry.getValue());
+        }
+    }
+
+    private void remove(CachedObject object) {
+        object.removed = true;
+        if (object.leases == 0) {
+            object.getPath().toFile().delete();
+        }
+    }
+
+    private synchronized void release(CachedObject object) {
+        if (--object.leases == 0 && object.isRemoved()) {
+            object.getPath().toFile().delete();
+        }
+    }
+
+    /**
+     * Removes all cached objects of the server whose key starts with given prefix.
+     */
+    public void invalidate(String serverName, String keyPrefix) {
+        if (!this.isEnabled()) {
+            return;
+        }
+
+        synchronized (this) {
+            Iterator<CachedObject> iterator = this.entries.values().iterator();
+            while (iterator.hasNext()) {
+                CachedObject object = iterator.next();
+                if (object.getServerName().equals(serverName) && object.getKey().startsWith(keyPrefix)) {
+                    iterator.remove();
+                    this.totalSize -= object.getSize();
+                    this.remove(object);
+                }
+            }
+            // Running downloads will notice they are no longer current
+            this.loading.keySet().removeIf(id -> id.startsWith(createId(serverName, keyPrefix)));
+        }
+    }
+
+    public CacheStats stats() {
+        return CacheStats.of(this.hits.get(), this.misses.get(), 0, 0, 0, this.evictions.get(), 0);
+    }
+
+    public synchronized long getTotalSize() {
+        return this.totalSize;
+    }
+
+    private static String createId(String serverName, String key) {
+        return serverName + "\n" + key;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class CachedObject {
+        private final String serverName;
+        private final String key;
+        private final String version;
+        private final Path path;
+        private final long size;
+        // Guarded by the cache
+        private int leases;
+        private boolean removed;
+    }
+
+    /**
+     * Keeps cached file on disk while it is read, must be released exactly once reading has finished.
+     */
+    public class Lease {
+        private final CachedObject object;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(CachedObject object) {
+            this.object = object;
+        }
+
+        public Path getPath() {
+            return this.object.getPath();
+        }
+
+        public void release() {
+            if (this.released.compareAndSet(false, true)) {
+                S3DiskCache.this.release(this.object);
+            }
+        }
+    }
+}
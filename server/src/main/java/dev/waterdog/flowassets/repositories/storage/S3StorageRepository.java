@@ -15,10 +15,21 @@
 
 package dev.waterdog.flowassets.repositories.storage;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.waterdog.flowassets.jfr.PresignEvent;
+import dev.waterdog.flowassets.metrics.FlowMetrics;
 import dev.waterdog.flowassets.structure.FileSnapshot;
+import dev.waterdog.flowassets.structure.FlowAsset;
 import dev.waterdog.flowassets.structure.RepositoryType;
 import dev.waterdog.flowassets.structure.S3ServerData;
+import dev.waterdog.flowassets.utils.AsyncLimiter;
+import dev.waterdog.flowassets.utils.Bulkhead;
+import dev.waterdog.flowassets.utils.Bulkheads;
+import dev.waterdog.flowassets.utils.Helper;
 import io.vertx.core.buffer.Buffer;
+import lombok.extern.jbosslog.JBossLog;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.async.AsyncResponseTransformer;
@@ -30,22 +41,69 @@ import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 
 import javax.ws.rs.core.MediaType;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+@JBossLog
 public class S3StorageRepository implements StorageRepositoryImpl {
 
     private final S3ServerData serverData;
+    private final S3StorageSettings settings;
+    private final S3DiskCache diskCache;
+    private final FlowMetrics metrics;
     private final S3AsyncClient client;
     private final S3Presigner presigner;
+    // Bounds concurrent multipart part uploads across all uploads to this server
+    private final AsyncLimiter partLimiter;
+    // Bounds in-flight requests across all S3 servers, shared with other repositories
+    private final AsyncLimiter requestLimiter;
+    // Object downloads hold their slot while the body is streamed, so they get a separate limit
+    private final AsyncLimiter streamLimiter;
+    // Multipart uploads read parts of file backed snapshots here, never on S3 client threads
+    private final Bulkhead fileIo;
+    private final Duration signatureDuration;
+    // Presigned links are reused until safety margin before expiry, hot keys are re-signed in background
+    private final LoadingCache<PresignKey, URL> presignCache;
 
-    public S3StorageRepository(S3ServerData serverData) {
+    public S3StorageRepository(S3ServerData serverData, S3StorageSettings settings, S3DiskCache diskCache,
+                               Bulkheads bulkheads, FlowMetrics metrics) {
         this.serverData = serverData;
+        this.settings = settings;
+        this.diskCache = diskCache;
+        this.metrics = metrics;
+        this.requestLimiter = bulkheads.getS3();
+        this.streamLimiter = bulkheads.getS3Streams();
+        this.fileIo = bulkheads.getFileIo();
+        this.partLimiter = new AsyncLimiter(Math.max(1, settings.getMultipartConcurrency()));
+
+        this.signatureDuration = serverData.getSignatureDuration() == null ?
+                settings.getSignatureDuration() : Duration.ofSeconds(serverData.getSignatureDuration());
+        Duration reuseDuration = this.signatureDuration.minus(settings.getPresignSafetyMargin());
+        if (reuseDuration.getSeconds() < 1) {
+            this.presignCache = null; // links would expire too soon to be worth reusing
+        } else {
+            this.presignCache = Caffeine.newBuilder()
+                    .maximumSize(settings.getPresignCacheSize())
+                    .expireAfterWrite(reuseDuration)
+                    .refreshAfterWrite(reuseDuration.dividedBy(2))
+                    .recordStats()
+                    .build(key -> this.presign(key.key(), key.fileName()));
+        }
 
         Region region = Region.US_EAST_1;
         if (serverData.getRegionName() != null) {
@@ -80,30 +138,94 @@ public class S3StorageRepository implements StorageRepositoryImpl {
 
     @Override
     public CompletableFuture<Void> saveFileSnapshot(FileSnapshot snapshot) {
+        return this.metrics.timeUpload(this.getType(), this.getServerName(), snapshot.getUuid(), snapshot.getContentLength(), () -> this.saveSnapshot(snapshot));
+    }
+
+    private CompletableFuture<Void> saveSnapshot(FileSnapshot snapshot) {
+        if (this.settings.isDeduplicate() && snapshot.getContentHash() != null) {
+            return this.saveBlob(snapshot);
+        }
+        return this.saveObject(snapshot.getUuid() + "/" + snapshot.getFileName(), snapshot)
+                .thenRun(() -> this.diskCache.invalidate(this.getServerName(), snapshot.getUuid() + "/"));
+    }
+
+    private CompletableFuture<Void> saveBlob(FileSnapshot snapshot) {
+        String key = BLOB_PREFIX + snapshot.getContentHash();
+        HeadObjectRequest request = HeadObjectRequest.builder()
+                .bucket(this.serverData.getBucketName())
+                .key(key)
+                .build();
+
+        // Identical content was already uploaded, skip the transfer entirely
+        return this.requestLimiter.submit(() -> this.client.headObject(request))
+                .handle((response, error) -> error == null)
+                .thenCompose(exists -> exists ? CompletableFuture.completedFuture(null) : this.saveObject(key, snapshot))
+                .thenRun(() -> snapshot.setContentAddressed(true));
+    }
+
+    private CompletableFuture<Void> saveObject(String key, FileSnapshot snapshot) {
+        if (snapshot.getContentLength() > this.settings.getMultipartThreshold().asLongValue()) {
+            return this.saveMultipart(key, snapshot);
+        }
+
         PutObjectRequest request = PutObjectRequest.builder()
                 .bucket(this.serverData.getBucketName())
-                .contentLength((long) snapshot.getContent().length())
-                .key(snapshot.getUuid() + "/" + snapshot.getFileName())
+                .contentLength(snapshot.getContentLength())
+                .key(key)
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
                 .build();
 
-        ByteBuffer buffer = snapshot.getContent().getByteBuf().nioBuffer();
+        AsyncRequestBody body;
+        if (snapshot.isFileBacked()) {
+            body = AsyncRequestBody.fromFile(snapshot.getContentPath());
+        } else {
+            body = AsyncRequestBody.fromByteBuffer(snapshot.getContent().getByteBuf().nioBuffer());
+        }
 
-        return this.client.putObject(request, AsyncRequestBody.fromByteBuffer(buffer))
+        return this.requestLimiter.submit(() -> this.client.putObject(request, body))
                 .thenAccept(action -> {});
     }
 
+    private CompletableFuture<Void> saveMultipart(String key, FileSnapshot snapshot) {
+        CreateMultipartUploadRequest request = CreateMultipartUploadRequest.builder()
+                .bucket(this.serverData.getBucketName())
+                .key(key)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .build();
+
+        return this.requestLimiter.submit(() -> this.client.createMultipartUpload(request)).thenCompose(response -> {
+            MultipartUpload upload = new MultipartUpload(key, response.uploadId(), snapshot);
+            return upload.uploadParts()
+                    .thenCompose(upload::complete)
+                    .exceptionallyCompose(upload::abort);
+        });
+    }
+
     @Override
     public CompletableFuture<FileSnapshot> loadSnapshot(String uuid, String fileName) {
+        return this.metrics.timeStorage(this.getType(), this.getServerName(), "load", uuid, () -> this.readSnapshot(uuid, fileName));
+    }
+
+    private CompletableFuture<FileSnapshot> readSnapshot(String uuid, String fileName) {
+        // Content version is not known here, so the disk cache could return outdated copy
         GetObjectRequest request = GetObjectRequest.builder()
                 .bucket(this.serverData.getBucketName())
                 .key(uuid + "/" + fileName)
                 .build();
 
-        return this.client.getObject(request, AsyncResponseTransformer.toBytes())
+        return this.streamLimiter.submit(() -> this.client.getObject(request, AsyncResponseTransformer.toBytes()))
                 .thenApply(response -> new FileSnapshot(uuid, fileName, Buffer.buffer(response.asByteArray())));
     }
 
+    public <T> CompletableFuture<T> getObject(String key, AsyncResponseTransformer<GetObjectResponse, T> transformer) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(this.serverData.getBucketName())
+                .key(key)
+                .build();
+        return this.metrics.timeStorage(this.getType(), this.getServerName(), "get", key,
+                () -> this.streamLimiter.submit(() -> this.client.getObject(request, transformer)));
+    }
+
     @Override
     public CompletableFuture<Void> deleteSnapshots(String uuid) {
         ListObjectsRequest listRequest = ListObjectsRequest.builder()
@@ -111,9 +233,13 @@ public class S3StorageRepository implements StorageRepositoryImpl {
                 .prefix(uuid)
                 .build();
 
-        return this.client.listObjects(listRequest).thenApply(action -> {
+        return this.metrics.timeStorage(this.getType(), this.getServerName(), "delete", uuid, () -> this.requestLimiter.submit(() -> this.client.listObjects(listRequest)).thenCompose(listing -> {
+            if (listing.contents().isEmpty()) {
+                return CompletableFuture.<Void>completedFuture(null); // S3 rejects delete request without objects
+            }
+
             List<ObjectIdentifier> objects = new ArrayList<>();
-            for (S3Object content : action.contents()) {
+            for (S3Object content : listing.contents()) {
                 objects.add(ObjectIdentifier.builder()
                         .key(content.key())
                         .build());
@@ -124,27 +250,240 @@ public class S3StorageRepository implements StorageRepositoryImpl {
                     .delete(Delete.builder().objects(objects).build())
                     .build();
 
-            return this.client.deleteObjects(request);
-        }).thenAccept(resp -> {});
+            return this.requestLimiter.submit(() -> this.client.deleteObjects(request)).thenAccept(response -> {
+                // Failures of single objects do not fail the request itself
+                if (!response.errors().isEmpty()) {
+                    S3Error error = response.errors().get(0);
+                    throw new IllegalStateException("Failed to delete " + response.errors().size() + " objects of " + uuid +
+                            ", first " + error.key() + ": " + error.code() + " " + error.message());
+                }
+            });
+        }).thenRun(() -> this.diskCache.invalidate(this.getServerName(), uuid)));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteBlob(String contentHash) {
+        DeleteObjectRequest request = DeleteObjectRequest.builder()
+                .bucket(this.serverData.getBucketName())
+                .key(BLOB_PREFIX + contentHash)
+                .build();
+        return this.metrics.timeStorage(this.getType(), this.getServerName(), "delete-blob", BLOB_PREFIX + contentHash, () -> this.requestLimiter.submit(() -> this.client.deleteObject(request))
+                .thenAccept(response -> this.diskCache.invalidate(this.getServerName(), BLOB_PREFIX + contentHash)));
     }
 
-    public URL createDownloadUrl(String uuid, String fileName) {
+    @Override
+    public CompletableFuture<Void> deleteReplacedSnapshot(String uuid, String fileName) {
+        String key = uuid + "/" + fileName;
+        DeleteObjectRequest request = DeleteObjectRequest.builder()
+                .bucket(this.serverData.getBucketName())
+                .key(key)
+                .build();
+        return this.metrics.timeStorage(this.getType(), this.getServerName(), "delete", uuid, () -> this.requestLimiter.submit(() -> this.client.deleteObject(request))
+                .thenAccept(response -> this.diskCache.invalidate(this.getServerName(), key)));
+    }
+
+    public boolean isDiskCached() {
+        return this.diskCache.isEnabled();
+    }
+
+    /**
+     * Returns lease of local copy of the object from disk cache, downloading it when not cached yet
+     * or when cached copy is of different content version. Caller has to release the lease once the file was read.
+     */
+    public CompletableFuture<S3DiskCache.Lease> getCachedFile(String key, String version) {
+        return this.diskCache.getFile(this, key, version);
+    }
+
+    public URL createDownloadUrl(String key, String fileName) {
+        PresignEvent event = new PresignEvent();
+        event.begin();
+        URL url = this.presignCache == null ? this.presign(key, fileName) : this.presignCache.get(new PresignKey(key, fileName));
+        if (event.shouldCommit()) {
+            event.repository = this.getServerName();
+            event.key = key;
+            event.fileName = fileName;
+            event.commit();
+        }
+        return url;
+    }
+
+    private URL presign(String key, String fileName) {
+        // Blob keys do not carry the file name, let S3 send it instead
         GetObjectRequest request = GetObjectRequest.builder()
                 .bucket(this.serverData.getBucketName())
-                .key(uuid + "/" + fileName)
+                .key(key)
+                .responseContentDisposition("attachment; filename=\"" + fileName + "\"")
                 .build();
 
         GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
-                .signatureDuration(Duration.ofMinutes(5))
+                .signatureDuration(this.signatureDuration)
                 .getObjectRequest(request)
                 .build();
         return presigner.presignGetObject(presignRequest).url();
     }
 
+    /**
+     * Creates link used by API clients. With disk cache enabled the link points to this server,
+     * which serves the object from local disk, otherwise a presigned S3 link is returned.
+     */
+    public String createDownloadLink(FlowAsset asset) {
+        String key = StorageRepositoryImpl.getStorageKey(asset);
+        String fileName = StorageRepositoryImpl.getAssetFileName(asset);
+        if (!this.isDiskCached()) {
+            return this.createDownloadUrl(key, fileName).toString();
+        }
+
+        String link = "/api/remote/" + Helper.encodeUrlPath(this.getServerName()) + "/" + Helper.encodeUrlPath(key);
+        if (asset.isContentAddressed()) {
+            link += "?name=" + Helper.encodeUrlPath(fileName);
+        }
+        return link;
+    }
+
+    public List<String> createDownloadUrls(List<FlowAsset> assets) {
+        List<String> urls = new ArrayList<>(assets.size());
+        for (FlowAsset asset : assets) {
+            urls.add(this.createDownloadLink(asset));
+        }
+        return urls;
+    }
+
+    private class MultipartUpload {
+        private final String key;
+        private final String uploadId;
+        private final FileSnapshot snapshot;
+        private final long partSize;
+        private final CompletedPart[] parts;
+        private final AtomicBoolean failed = new AtomicBoolean(false);
+
+        private MultipartUpload(String key, String uploadId, FileSnapshot snapshot) {
+            this.key = key;
+            this.uploadId = uploadId;
+            this.snapshot = snapshot;
+            this.partSize = Math.max(5 * 1024 * 1024, settings.getMultipartPartSize().asLongValue());
+            this.parts = new CompletedPart[(int) ((snapshot.getContentLength() + this.partSize - 1) / this.partSize)];
+        }
+
+        private CompletableFuture<Void> uploadParts() {
+            CompletableFuture<?>[] futures = new CompletableFuture[this.parts.length];
+            for (int i = 0; i < this.parts.length; i++) {
+                int index = i;
+                futures[i] = partLimiter.submit(() -> this.uploadPart(index, 1)).thenAccept(part -> this.parts[index] = part);
+            }
+            return CompletableFuture.allOf(futures);
+        }
+
+        private CompletableFuture<CompletedPart> uploadPart(int index, int attempt) {
+            if (this.failed.get()) {
+                return CompletableFuture.failedFuture(new CancellationException("Upload " + this.uploadId + " failed"));
+            }
+
+            long offset = index * this.partSize;
+            int length = (int) Math.min(this.partSize, this.snapshot.getContentLength() - offset);
+            int partNumber = index + 1;
+
+            UploadPartRequest request = UploadPartRequest.builder()
+                    .bucket(serverData.getBucketName())
+                    .key(this.key)
+                    .uploadId(this.uploadId)
+                    .partNumber(partNumber)
+                    .contentLength((long) length)
+                    .build();
+
+            return this.readPart(offset, length)
+                    .thenCompose(buffer -> requestLimiter.submit(() -> client.uploadPart(request, AsyncRequestBody.fromByteBuffer(buffer))))
+                    .thenApply(response -> CompletedPart.builder()
+                            .partNumber(partNumber)
+                            .eTag(response.eTag())
+                            .build()
+                    ).exceptionallyCompose(error -> {
+                        if (attempt >= settings.getMultipartRetries() || this.failed.get()) {
+                            this.failed.set(true);
+                            return CompletableFuture.failedFuture(error);
+                        }
+
+                        log.warn("Retrying part " + partNumber + " of " + this.key + " (attempt " + attempt + ")", error);
+                        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(attempt * 500L, TimeUnit.MILLISECONDS))
+                                .thenCompose(i -> this.uploadPart(index, attempt + 1));
+                    });
+        }
+
+        /**
+         * Parts are usually read once previous part finished uploading, so on an S3 client thread.
+         * Reading from file blocks, so it runs in the file I/O bulkhead.
+         */
+        private CompletableFuture<ByteBuffer> readPart(long offset, int length) {
+            if (!this.snapshot.isFileBacked()) {
+                return CompletableFuture.completedFuture(this.snapshot.getContent().getByteBuf().nioBuffer((int) offset, length));
+            }
+
+            return fileIo.supply(() -> {
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                try (FileChannel channel = FileChannel.open(this.snapshot.getContentPath(), StandardOpenOption.READ)) {
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, offset + buffer.position()) < 0) {
+                            throw new EOFException("Unexpected end of " + this.snapshot.getContentPath());
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return buffer.flip();
+            });
+        }
+
+        private CompletableFuture<Void> complete(Void unused) {
+            CompleteMultipartUploadRequest request = CompleteMultipartUploadRequest.builder()
+                    .bucket(serverData.getBucketName())
+                    .key(this.key)
+                    .uploadId(this.uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder()
+                            .parts(Arrays.asList(this.parts))
+                            .build())
+                    .build();
+            return requestLimiter.submit(() -> client.completeMultipartUpload(request)).thenAccept(response -> {});
+        }
+
+        private CompletableFuture<Void> abort(Throwable error) {
+            this.failed.set(true);
+            AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+                    .bucket(serverData.getBucketName())
+                    .key(this.key)
+                    .uploadId(this.uploadId)
+                    .build();
+
+            return client.abortMultipartUpload(request).handle((response, abortError) -> {
+                if (abortError != null) {
+                    log.error("Failed to abort multipart upload of " + this.key, abortError);
+                }
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            });
+        }
+    }
+
+    public CacheStats getPresignStats() {
+        return this.presignCache == null ? CacheStats.empty() : this.presignCache.stats();
+    }
+
+    private record PresignKey(String key, String fileName) {
+    }
+
     public String getServerName() {
         return this.serverData.getServerName();
     }
 
+    public S3ServerData getServerData() {
+        return this.serverData;
+    }
+
+    /**
+     * Releases connections of the client, the storage can not be used afterwards.
+     */
+    public void close() {
+        this.client.close();
+        this.presigner.close();
+    }
+
     @Override
     public RepositoryType getType() {
         return RepositoryType.REMOTE_S3;
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.repositories.storage;
+
+import io.quarkus.runtime.configuration.MemorySize;
+import lombok.Getter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.time.Duration;
+
+@Getter
+@Singleton
+public class S3StorageSettings {
+
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.multipart-threshold", defaultValue = "32M")
+    MemorySize multipartThreshold;
+
+    // S3 requires at least 5MB for every part except the last one
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.multipart-part-size", defaultValue = "8M")
+    MemorySize multipartPartSize;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.multipart-concurrency", defaultValue = "4")
+    int multipartConcurrency;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.multipart-retries", defaultValue = "3")
+    int multipartRetries;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.signature-duration", defaultValue = "5m")
+    Duration signatureDuration;
+
+    // Cached presigned links are never handed out with less validity left than this
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.presign-safety-margin", defaultValue = "1m")
+    Duration presignSafetyMargin;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.presign-cache-size", defaultValue = "10000")
+    long presignCacheSize;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.disk-cache.enabled", defaultValue = "false")
+    boolean diskCacheEnabled;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.disk-cache.dir", defaultValue = "s3-cache/")
+    String diskCacheDir;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.s3.disk-cache.max-size", defaultValue = "10G")
+    MemorySize diskCacheMaxSize;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.storage.deduplicate", defaultValue = "false")
+    boolean deduplicate;
+}
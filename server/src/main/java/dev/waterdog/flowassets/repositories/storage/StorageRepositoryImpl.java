@@ -19,26 +19,76 @@ import dev.waterdog.flowassets.structure.FileSnapshot;
 import dev.waterdog.flowassets.structure.FlowAsset;
 import dev.waterdog.flowassets.structure.RepositoryType;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface StorageRepositoryImpl {
+    String BLOB_PREFIX = "blobs/";
 
     CompletableFuture<Void> saveFileSnapshot(FileSnapshot snapshot);
     CompletableFuture<FileSnapshot> loadSnapshot(String uuid, String fileName);
     CompletableFuture<Void> deleteSnapshots(String uuid);
+    CompletableFuture<Void> deleteBlob(String contentHash);
+
+    /**
+     * Deletes file which an upload without deduplication stored under uuid/fileName, once the asset
+     * references a blob instead. Storages which keep asset paths as links to blobs have nothing to delete.
+     */
+    default CompletableFuture<Void> deleteReplacedSnapshot(String uuid, String fileName) {
+        return CompletableFuture.completedFuture(null);
+    }
     RepositoryType getType();
 
     static String createDownloadUrl(FlowAsset asset, StorageRepositoryImpl storage) {
         return switch (storage.getType()) {
             case LOCAL -> "/api/file/" + asset.getAssetLocation();
-            case REMOTE_S3 -> {
-                String fileName = getAssetFileName(asset);
-                yield ((S3StorageRepository) storage).createDownloadUrl(asset.getUuid().toString(), fileName).toString();
-            }
+            case REMOTE_S3 -> ((S3StorageRepository) storage).createDownloadLink(asset);
         };
 
     }
 
+    /**
+     * Same as {@link #createDownloadUrl(FlowAsset, StorageRepositoryImpl)}, but S3 assets always
+     * get presigned link, so they can be downloaded without an API token.
+     */
+    static String createDirectDownloadUrl(FlowAsset asset, StorageRepositoryImpl storage) {
+        if (storage.getType() == RepositoryType.REMOTE_S3) {
+            String fileName = getAssetFileName(asset);
+            return ((S3StorageRepository) storage).createDownloadUrl(getStorageKey(asset), fileName).toString();
+        }
+        return createDownloadUrl(asset, storage);
+    }
+
+    static List<String> createDownloadUrls(List<FlowAsset> assets, StorageRepositoryImpl storage) {
+        if (storage.getType() == RepositoryType.LOCAL) {
+            List<String> urls = new ArrayList<>(assets.size());
+            for (FlowAsset asset : assets) {
+                urls.add(createDownloadUrl(asset, storage));
+            }
+            return urls;
+        }
+        return ((S3StorageRepository) storage).createDownloadUrls(assets);
+    }
+
+    static String getStorageKey(FlowAsset asset) {
+        if (asset.isContentAddressed()) {
+            return BLOB_PREFIX + asset.getContentHash();
+        }
+        return asset.getAssetLocation();
+    }
+
+    /**
+     * Identifies uploaded content of the asset. Unlike the storage key it changes when a file
+     * with the same name is uploaded again, so caches can tell that their copy is outdated.
+     */
+    static String getContentVersion(FlowAsset asset) {
+        if (asset.getContentHash() != null) {
+            return asset.getContentHash();
+        }
+        return asset.getLastModified() == null ? "" : String.valueOf(asset.getLastModified().toEpochMilli());
+    }
+
     static String getAssetFileName(FlowAsset asset) {
         String[] namespace = asset.getAssetLocation().split("/");
         return namespace[namespace.length - 1];
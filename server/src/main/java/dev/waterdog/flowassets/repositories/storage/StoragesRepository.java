@@ -15,18 +15,33 @@
 
 package dev.waterdog.flowassets.repositories.storage;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.waterdog.flowassets.metrics.FlowMetrics;
 import dev.waterdog.flowassets.repositories.S3ServersRepository;
 import dev.waterdog.flowassets.structure.RepositoryType;
 import dev.waterdog.flowassets.structure.S3ServerData;
-import dev.waterdog.flowassets.utils.CacheableMap;
+import dev.waterdog.flowassets.utils.Bulkheads;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import lombok.extern.jbosslog.JBossLog;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+@JBossLog
 @Singleton
 public class StoragesRepository {
+    private static final long CLOSE_DELAY_SECONDS = 60;
 
     @Inject
     LocalStorageRepository localStorage;
@@ -34,10 +49,25 @@ public class StoragesRepository {
     @Inject
     S3ServersRepository s3ConfigRepository;
 
-    private final Map<String, S3StorageRepository> s3Servers = CacheableMap.<String, S3StorageRepository>builder()
-            .timeout(10)
-            .unit(TimeUnit.MINUTES)
-            .build();
+    @Inject
+    S3StorageSettings s3Settings;
+
+    @Inject
+    S3DiskCache s3DiskCache;
+
+    @Inject
+    Bulkheads bulkheads;
+
+    @Inject
+    FlowMetrics metrics;
+
+    // Clients are kept until their configuration changes, replaced ones are closed
+    private final Map<String, S3StorageRepository> s3Servers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void initMetrics() {
+        this.metrics.monitorCache("s3-presign", this, StoragesRepository::getPresignStats);
+    }
 
     public StorageRepositoryImpl getStorageRepository(String storageName) {
         if (RepositoryType.getTypeFromName(storageName) == RepositoryType.LOCAL) {
@@ -46,12 +76,146 @@ public class StoragesRepository {
         return this.s3Servers.computeIfAbsent(storageName, this::createS3Storage);
     }
 
+    /**
+     * Non-blocking variant of {@link #getStorageRepository(String)}, only S3 configurations
+     * which are not loaded yet are resolved on a worker thread.
+     */
+    public Uni<StorageRepositoryImpl> getStorageRepositoryAsync(String storageName) {
+        if (RepositoryType.getTypeFromName(storageName) == RepositoryType.LOCAL) {
+            return Uni.createFrom().item(this.localStorage);
+        }
+
+        S3StorageRepository storage = this.s3Servers.get(storageName);
+        if (storage != null) {
+            return Uni.createFrom().item(storage);
+        }
+        return Uni.createFrom().item(() -> this.getStorageRepository(storageName))
+                .runSubscriptionOn(this.bulkheads.getMetadata());
+    }
+
+    public Uni<Map<String, StorageRepositoryImpl>> getStorageRepositoriesAsync(Collection<String> storageNames) {
+        Map<String, StorageRepositoryImpl> repositories = new HashMap<>();
+        for (String storageName : storageNames) {
+            StorageRepositoryImpl storage = RepositoryType.getTypeFromName(storageName) == RepositoryType.LOCAL ?
+                    this.localStorage : this.s3Servers.get(storageName);
+            if (storage == null) {
+                // Missing configurations are loaded with a single query off the event loop
+                return Uni.createFrom().item(() -> this.getStorageRepositories(storageNames))
+                        .runSubscriptionOn(this.bulkheads.getMetadata());
+            }
+            repositories.put(storageName, storage);
+        }
+        return Uni.createFrom().item(repositories);
+    }
+
+    /**
+     * Resolves multiple storages at once, loading all missing S3 configurations with a single query.
+     * Unknown storages are not present in the returned map.
+     */
+    public Map<String, StorageRepositoryImpl> getStorageRepositories(Collection<String> storageNames) {
+        Map<String, StorageRepositoryImpl> repositories = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String storageName : storageNames) {
+            if (RepositoryType.getTypeFromName(storageName) == RepositoryType.LOCAL) {
+                repositories.put(storageName, this.localStorage);
+                continue;
+            }
+
+            S3StorageRepository storage = this.s3Servers.get(storageName);
+            if (storage == null) {
+                missing.add(storageName);
+            } else {
+                repositories.put(storageName, storage);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (S3ServerData serverData : this.s3ConfigRepository.findByNames(missing)) {
+                repositories.put(serverData.getServerName(), this.s3Servers.computeIfAbsent(serverData.getServerName(),
+                        name -> new S3StorageRepository(serverData, this.s3Settings, this.s3DiskCache, this.bulkheads, this.metrics)));
+            }
+        }
+        return repositories;
+    }
+
     private S3StorageRepository createS3Storage(String name) {
         S3ServerData serverData = this.s3ConfigRepository.getByName(name);
         if (serverData == null) {
             return null;
         }
-        return new S3StorageRepository(serverData);
+        return new S3StorageRepository(serverData, this.s3Settings, this.s3DiskCache, this.bulkheads, this.metrics);
+    }
+
+    /**
+     * Presign cache statistics summed over all loaded S3 servers.
+     */
+    public CacheStats getPresignStats() {
+        CacheStats stats = CacheStats.empty();
+        for (S3StorageRepository storage : this.s3Servers.values()) {
+            if (storage != null) {
+                stats = stats.plus(storage.getPresignStats());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Drops loaded storage of the server, so the next request uses its current configuration.
+     * Called once a change of the server configuration was committed.
+     */
+    public void invalidateS3Server(S3ServerData serverData) {
+        // Server might have been renamed, so the storage is looked up by id as well
+        this.s3Servers.entrySet().removeIf(entry -> {
+            S3StorageRepository storage = entry.getValue();
+            if (!entry.getKey().equals(serverData.getServerName()) && !Objects.equals(storage.getServerData().id, serverData.id)) {
+                return false;
+            }
+            this.closeLater(storage);
+            return true;
+        });
+    }
+
+    /**
+     * Picks up configurations changed outside this instance, e.g. by another server node.
+     */
+    @Scheduled(every = "{flowassets.s3.refresh-interval}", delayed = "{flowassets.s3.refresh-interval}")
+    void refreshS3Servers() {
+        if (this.s3Servers.isEmpty()) {
+            return;
+        }
+
+        Map<String, S3ServerData> configurations = new HashMap<>();
+        for (S3ServerData serverData : this.s3ConfigRepository.getAll()) {
+            configurations.put(serverData.getServerName(), serverData);
+        }
+
+        for (Map.Entry<String, S3StorageRepository> entry : this.s3Servers.entrySet()) {
+            S3ServerData current = configurations.get(entry.getKey());
+            if ((current == null || !isSameConfiguration(entry.getValue().getServerData(), current))
+                    && this.s3Servers.remove(entry.getKey(), entry.getValue())) {
+                log.info("Configuration of S3 server " + entry.getKey() + " changed, reloading it");
+                this.closeLater(entry.getValue());
+            }
+        }
+    }
+
+    private void closeLater(S3StorageRepository storage) {
+        // Requests which already got the storage may still be running
+        CompletableFuture.runAsync(storage::close, CompletableFuture.delayedExecutor(CLOSE_DELAY_SECONDS, TimeUnit.SECONDS))
+                .exceptionally(error -> {
+                    log.warn("Failed to close S3 client of " + storage.getServerName(), error);
+                    return null;
+                });
+    }
+
+    private static boolean isSameConfiguration(S3ServerData loaded, S3ServerData current) {
+        return Objects.equals(loaded.getServerName(), current.getServerName())
+                && Objects.equals(loaded.getBucketUrl(), current.getBucketUrl())
+                && Objects.equals(loaded.getBucketName(), current.getBucketName())
+                && Objects.equals(loaded.getAccessKey(), current.getAccessKey())
+                && Objects.equals(loaded.getSecretkey(), current.getSecretkey())
+                && Objects.equals(loaded.getRegionName(), current.getRegionName())
+                && Objects.equals(loaded.getSignatureDuration(), current.getSignatureDuration());
     }
 
     public S3ServersRepository getS3ConfigRepository() {
@@ -15,6 +15,8 @@
 
 package dev.waterdog.flowassets.route;
 
+import dev.waterdog.flowassets.jfr.AuthCheckEvent;
+import dev.waterdog.flowassets.metrics.FlowMetrics;
 import dev.waterdog.flowassets.repositories.SecretTokensRepository;
 import dev.waterdog.flowassets.structure.SecretToken;
 import io.vertx.ext.web.RoutingContext;
@@ -30,8 +32,11 @@ public class AccessRouter {
     @Inject
     SecretTokensRepository tokensRepository;
 
+    @Inject
+    FlowMetrics metrics;
+
     public boolean authorize(RoutingContext ctx) {
-        boolean authed = this.isAuthenticated(ctx);
+        boolean authed = this.metrics.timeAuthCheck(() -> this.isAuthenticated(ctx));
         if (authed) {
             ctx.next();
         } else {
@@ -41,7 +46,14 @@ public class AccessRouter {
     }
 
     public boolean isAuthenticated(RoutingContext ctx) {
-        String authToken = ctx.request().getHeader(HEADER_AUTH_TOKEN);
+        AuthCheckEvent event = new AuthCheckEvent();
+        event.begin();
+        event.granted = this.checkToken(ctx.request().getHeader(HEADER_AUTH_TOKEN));
+        event.commit();
+        return event.granted;
+    }
+
+    private boolean checkToken(String authToken) {
         if (authToken == null || authToken.trim().isEmpty()) {
             return false;
         }
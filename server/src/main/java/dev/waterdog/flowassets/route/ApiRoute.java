@@ -15,35 +15,60 @@
 
 package dev.waterdog.flowassets.route;
 
+import dev.waterdog.flowassets.jfr.GroupInfoEvent;
+import dev.waterdog.flowassets.metrics.FlowMetrics;
 import dev.waterdog.flowassets.repositories.AssetGroupRepository;
 import dev.waterdog.flowassets.repositories.AssetsRepository;
+import dev.waterdog.flowassets.repositories.storage.S3DiskCache;
+import dev.waterdog.flowassets.repositories.storage.S3StorageRepository;
 import dev.waterdog.flowassets.repositories.storage.StorageRepositoryImpl;
 import dev.waterdog.flowassets.repositories.storage.StoragesRepository;
 import dev.waterdog.flowassets.structure.FileSnapshot;
 import dev.waterdog.flowassets.structure.FlowAsset;
+import dev.waterdog.flowassets.structure.RepositoryType;
 import dev.waterdog.flowassets.structure.rest.*;
+import dev.waterdog.flowassets.tracing.FlowTracing;
+import dev.waterdog.flowassets.utils.Bulkhead;
+import dev.waterdog.flowassets.utils.Bulkheads;
+import dev.waterdog.flowassets.utils.GzipWriteStream;
 import dev.waterdog.flowassets.utils.Helper;
+import dev.waterdog.flowassets.utils.HttpRange;
+import dev.waterdog.flowassets.utils.TarArchiveWriter;
+import dev.waterdog.flowassets.utils.WriteStreamResponseTransformer;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.quarkus.vertx.web.Route;
 import io.quarkus.vertx.web.RouteBase;
+import io.opentelemetry.context.Context;
 import io.smallrye.mutiny.Uni;
-import io.smallrye.mutiny.infrastructure.Infrastructure;
 import io.smallrye.mutiny.tuples.Tuple2;
 import io.smallrye.mutiny.unchecked.Unchecked;
+import io.vertx.core.Future;
+import io.vertx.core.file.FileProps;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.ext.web.RoutingContext;
 import lombok.extern.jbosslog.JBossLog;
 import org.jboss.resteasy.reactive.MultipartForm;
 import org.jboss.resteasy.reactive.RestPath;
 import org.jboss.resteasy.reactive.RestQuery;
+import org.jboss.resteasy.reactive.server.ServerExceptionMapper;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
-import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 import static dev.waterdog.flowassets.repositories.storage.StorageRepositoryImpl.getAssetFileName;
 
@@ -52,6 +77,13 @@ import static dev.waterdog.flowassets.repositories.storage.StorageRepositoryImpl
 @RouteBase(path = "api")
 public class ApiRoute {
 
+    // Seconds clients should wait before retrying request rejected by full bulkhead
+    private static final String RETRY_AFTER = "1";
+    // Time request reached the API, before its body was received
+    private static final String REQUEST_START = "flowassets.request-start";
+    // Groups assets without repository, which are reported as invalid
+    private static final String NO_REPOSITORY = "";
+
     @Inject
     AccessRouter accessRouter;
 
@@ -64,8 +96,18 @@ public class ApiRoute {
     @Inject
     AssetGroupRepository groupRepository;
 
-    @Route(path = "*", order = 0, type = Route.HandlerType.BLOCKING)
+    @Inject
+    Bulkheads bulkheads;
+
+    @Inject
+    FlowMetrics metrics;
+
+    @Inject
+    FlowTracing tracing;
+
+    @Route(path = "*", order = 0)
     public void secureRoute(RoutingContext ctx) {
+        ctx.put(REQUEST_START, Instant.now());
         this.accessRouter.authorize(ctx);
     }
 
@@ -74,65 +116,291 @@ public class ApiRoute {
         String uuid = ctx.pathParam("uuid");
         String fileName = ctx.pathParam("file_name");
 
-        Uni.createFrom().completionStage(() -> this.storages.getLocalStorage().loadSnapshot(uuid, fileName))
-                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
-                .subscribe().with(snapshot -> {
-                    if (snapshot == null) {
+        java.nio.file.Path path = this.storages.getLocalStorage().getSnapshotPath(uuid, fileName);
+        if (path == null) {
+            ctx.response()
+                    .setStatusCode(Status.NOT_FOUND.getStatusCode())
+                    .end();
+        } else {
+            this.serveFile(ctx, path, fileName, this.storages.getLocalStorage().getServerName());
+        }
+    }
+
+    @Route(path = "/remote/:server/:prefix/:name", methods = Route.HttpMethod.GET)
+    public void serveRemoteFile(RoutingContext ctx) {
+        String serverName = ctx.pathParam("server");
+        String prefix = ctx.pathParam("prefix");
+        String key = prefix + "/" + ctx.pathParam("name");
+        // Content addressed blobs do not carry file name in their key
+        String fileName = ctx.request().getParam("name", ctx.pathParam("name"));
+
+        Uni<Tuple2<StorageRepositoryImpl, String>> storageUni = this.getObjectVersion(serverName, prefix, ctx.pathParam("name"))
+                .flatMap(version -> version == null ? Uni.createFrom().nullItem() :
+                        this.storages.getStorageRepositoryAsync(serverName).map(storage -> Tuple2.of(storage, version)));
+        Future.fromCompletionStage(storageUni.subscribeAsCompletionStage(), ctx.vertx().getOrCreateContext())
+                .compose(entry -> {
+                    if (entry == null || !(entry.getItem1() instanceof S3StorageRepository s3Storage) || !s3Storage.isDiskCached()) {
+                        return Future.<S3DiskCache.Lease>succeededFuture();
+                    }
+                    return Future.fromCompletionStage(s3Storage.getCachedFile(key, entry.getItem2()), ctx.vertx().getOrCreateContext());
+                }).onComplete(result -> {
+                    if (result.succeeded() && result.result() != null) {
+                        S3DiskCache.Lease lease = result.result();
+                        if (ctx.response().closed()) {
+                            lease.release();
+                            return;
+                        }
+                        // Cached file must not be deleted before it was sent
+                        ctx.addEndHandler(i -> lease.release());
+                        this.serveFile(ctx, lease.getPath(), fileName, serverName);
+                    } else if (result.succeeded() || isNoSuchKey(result.cause())) {
                         ctx.response()
                                 .setStatusCode(Status.NOT_FOUND.getStatusCode())
                                 .end();
+                    } else if (Bulkhead.isRejection(result.cause())) {
+                        respondBusy(ctx);
                     } else {
                         ctx.response()
-                                .putHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + snapshot.getFileName())
-                                .putHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM)
-                                .end(snapshot.getContent());
+                                .setStatusCode(Status.INTERNAL_SERVER_ERROR.getStatusCode())
+                                .end();
+                        log.error("Failed to serve " + key + " from " + serverName, result.cause());
                     }
-                }, err -> {
+                });
+    }
+
+    /**
+     * Returns content version of the object, or null when it does not belong to any asset.
+     * Only objects of existing assets are served, otherwise any token could read any key of the bucket.
+     */
+    private Uni<String> getObjectVersion(String serverName, String prefix, String name) {
+        if (StorageRepositoryImpl.BLOB_PREFIX.equals(prefix + "/")) {
+            // Blob keys already identify their content
+            return Uni.createFrom().item(() -> this.assetsRepository.countContentReferences(name, serverName) > 0 ? name : null)
+                    .runSubscriptionOn(this.bulkheads.getMetadata());
+        }
+
+        try {
+            UUID.fromString(prefix);
+        } catch (IllegalArgumentException e) {
+            return Uni.createFrom().nullItem();
+        }
+        return this.assetsRepository.getCachedByUuidAsync(prefix)
+                .map(asset -> asset != null && serverName.equals(asset.getAssetRepository())
+                        && (prefix + "/" + name).equals(StorageRepositoryImpl.getStorageKey(asset)) ?
+                        StorageRepositoryImpl.getContentVersion(asset) : null);
+    }
+
+    private static void respondBusy(RoutingContext ctx) {
+        ctx.response()
+                .setStatusCode(Status.SERVICE_UNAVAILABLE.getStatusCode())
+                .putHeader(HttpHeaderNames.RETRY_AFTER, RETRY_AFTER)
+                .end();
+    }
+
+    @ServerExceptionMapper
+    public Response mapBulkheadFull(Bulkhead.BulkheadFullException e) {
+        return Response.status(Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaderNames.RETRY_AFTER.toString(), RETRY_AFTER)
+                .build();
+    }
+
+    private static boolean isNoSuchKey(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof NoSuchKeyException || (error instanceof S3Exception s3Error && s3Error.statusCode() == 404);
+    }
+
+    private void serveFile(RoutingContext ctx, java.nio.file.Path path, String fileName, String repository) {
+        ctx.vertx().fileSystem().props(path.toString()).onComplete(result -> {
+            if (result.failed() || !result.result().isRegularFile()) {
+                if (result.failed() && !(result.cause().getCause() instanceof NoSuchFileException)) {
                     ctx.response()
                             .setStatusCode(Status.INTERNAL_SERVER_ERROR.getStatusCode())
                             .end();
-                    log.error("Failed to server file", err);
-                });
+                    log.error("Failed to serve file", result.cause());
+                } else {
+                    ctx.response()
+                            .setStatusCode(Status.NOT_FOUND.getStatusCode())
+                            .end();
+                }
+                return;
+            }
+
+            FileProps props = result.result();
+            String lastModified = Helper.httpDate(props.lastModifiedTime());
+            String etag = "\"" + Long.toHexString(props.size()) + "-" + Long.toHexString(props.lastModifiedTime()) + "\"";
+            ctx.response()
+                    .putHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
+                    .putHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM)
+                    .putHeader(HttpHeaderNames.ACCEPT_RANGES, "bytes")
+                    .putHeader(HttpHeaderNames.LAST_MODIFIED, lastModified)
+                    .putHeader(HttpHeaderNames.ETAG, etag);
+
+            String ifNoneMatch = ctx.request().getHeader(HttpHeaderNames.IF_NONE_MATCH);
+            if (ifNoneMatch != null && Helper.matchesEtag(ifNoneMatch, etag)) {
+                ctx.response()
+                        .setStatusCode(Status.NOT_MODIFIED.getStatusCode())
+                        .end();
+                return;
+            }
+
+            HttpRange range = HttpRange.parse(ctx.request().getHeader(HttpHeaderNames.RANGE), props.size());
+            String ifRange = ctx.request().getHeader(HttpHeaderNames.IF_RANGE);
+            if (range != null && ifRange != null && !ifRange.equals(lastModified) && !ifRange.equals(etag)) {
+                range = null; // file has changed since, send whole file
+            }
+
+            if (range != null && !range.isSatisfiable()) {
+                ctx.response()
+                        .setStatusCode(Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode())
+                        .putHeader(HttpHeaderNames.CONTENT_RANGE, "bytes */" + props.size())
+                        .end();
+                return;
+            }
+
+            long offset = 0;
+            long length = props.size();
+            if (range != null) {
+                offset = range.getStart();
+                length = range.getLength();
+                ctx.response()
+                        .setStatusCode(Status.PARTIAL_CONTENT.getStatusCode())
+                        .putHeader(HttpHeaderNames.CONTENT_RANGE, "bytes " + range.getStart() + "-" + range.getEnd() + "/" + props.size());
+            }
+
+            // sendFile() uses zero-copy transfer where possible and sets Content-Length for us
+            this.metrics.trackDownload(repository, length, ctx.response().sendFile(path.toString(), offset, length))
+                    .onFailure(err -> log.error("Failed to serve file", err));
+        });
+    }
+
+    @Route(path = "/group/:name/archive", methods = Route.HttpMethod.GET)
+    public void groupArchive(RoutingContext ctx) {
+        String name = ctx.pathParam("name");
+        boolean gzip = "gzip".equals(ctx.request().getParam("compression"));
+
+        Future.fromCompletionStage(this.bulkheads.getMetadata().supply(() -> {
+            if (this.groupRepository.getCachedByName(name) == null) {
+                return null;
+            }
+
+            List<FlowAsset> assets = this.assetsRepository.getCachedByGroupName(name);
+            // Asset without repository would be resolved as S3 server named null
+            Map<String, StorageRepositoryImpl> storages = this.storages.getStorageRepositories(assets.stream()
+                    .map(FlowAsset::getAssetRepository)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+
+            List<Tuple2<FlowAsset, StorageRepositoryImpl>> entries = new ArrayList<>();
+            for (FlowAsset asset : assets) {
+                StorageRepositoryImpl storage = asset.getAssetRepository() == null ? null : storages.get(asset.getAssetRepository());
+                if (storage == null) {
+                    log.warn("Skipping asset " + asset.getAssetName() + " with unknown repository " + asset.getAssetRepository());
+                } else {
+                    entries.add(Tuple2.of(asset, storage));
+                }
+            }
+            return entries;
+        }), ctx.vertx().getOrCreateContext()).onComplete(result -> {
+            if (result.failed() && Bulkhead.isRejection(result.cause())) {
+                respondBusy(ctx);
+                return;
+            }
+
+            if (result.failed()) {
+                ctx.response()
+                        .setStatusCode(Status.INTERNAL_SERVER_ERROR.getStatusCode())
+                        .end();
+                log.error("Failed to resolve group " + name, result.cause());
+                return;
+            }
+
+            if (result.result() == null) {
+                ctx.response()
+                        .setStatusCode(Status.NOT_FOUND.getStatusCode())
+                        .end();
+                return;
+            }
+
+            ctx.response()
+                    .setChunked(true)
+                    .putHeader(HttpHeaders.CONTENT_TYPE, gzip ? "application/gzip" : "application/x-tar")
+                    .putHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + name + (gzip ? ".tar.gz" : ".tar"));
+
+            TarArchiveWriter archive = new TarArchiveWriter(ctx.vertx(), gzip ? new GzipWriteStream(ctx.response()) : ctx.response());
+            Future<Void> future = Future.succeededFuture();
+            for (Tuple2<FlowAsset, StorageRepositoryImpl> entry : result.result()) {
+                FlowAsset asset = entry.getItem1();
+                long size = asset.getContentSize() == null ? 0 : asset.getContentSize();
+                future = future.compose(i -> this.metrics.trackDownload(asset.getAssetRepository(), size,
+                        this.writeArchiveEntry(ctx, archive, asset, entry.getItem2())));
+            }
+
+            future.compose(i -> archive.finish()).onFailure(err -> {
+                // Headers were already sent, broken connection tells client that archive is incomplete
+                log.error("Failed to stream archive of group " + name, err);
+                ctx.response().reset();
+            });
+        });
+    }
+
+    private Future<Void> writeArchiveEntry(RoutingContext ctx, TarArchiveWriter archive, FlowAsset asset, StorageRepositoryImpl storage) {
+        String fileName = getAssetFileName(asset);
+        String entryName = TarArchiveWriter.entryName(asset.getDeployPath() == null ? null : asset.getDeployPath().getPath(), fileName);
+        if (storage.getType() == RepositoryType.LOCAL) {
+            java.nio.file.Path path = this.storages.getLocalStorage().getSnapshotPath(asset.getUuid().toString(), fileName);
+            return archive.writeFile(entryName, path.toString());
+        }
+
+        S3StorageRepository s3Storage = (S3StorageRepository) storage;
+        if (s3Storage.isDiskCached()) {
+            return Future.fromCompletionStage(s3Storage.getCachedFile(StorageRepositoryImpl.getStorageKey(asset), StorageRepositoryImpl.getContentVersion(asset)), ctx.vertx().getOrCreateContext())
+                    .compose(lease -> archive.writeFile(entryName, lease.getPath().toString()).onComplete(i -> lease.release()));
+        }
+
+        WriteStreamResponseTransformer transformer = new WriteStreamResponseTransformer(archive.getStream(),
+                response -> archive.writeHeader(entryName, response.contentLength(), response.lastModified().toEpochMilli()));
+        return Future.fromCompletionStage(s3Storage.getObject(StorageRepositoryImpl.getStorageKey(asset), transformer), ctx.vertx().getOrCreateContext())
+                .compose(response -> archive.writePadding(response.contentLength()));
     }
 
     @GET
     @Path("asset/uuid/{uuid}")
     @Produces(MediaType.APPLICATION_JSON)
     public Uni<AssetInfoData> assetInfoUuid(@RestPath String uuid) {
-        return Uni.createFrom().item(() -> this.assetsRepository.findByUuid(uuid))
+        return this.assetsRepository.getCachedByUuidAsync(uuid)
                 .flatMap(asset -> {
                     if (asset == null) {
                         return Uni.createFrom().item(AssetInfoData.notFound(uuid));
                     } else {
                         return this.serverAssetInfo(asset);
                     }
-                })
-                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+                });
     }
 
     @GET
     @Path("asset/name/{name}")
     @Produces(MediaType.APPLICATION_JSON)
     public Uni<AssetInfoData> assetInfoName(@RestPath String name) {
-        return Uni.createFrom().item(() -> this.assetsRepository.getByName(name))
+        return this.assetsRepository.getCachedByNameAsync(name)
                 .flatMap(asset -> {
                     if (asset == null) {
                         return Uni.createFrom().item(AssetInfoData.notFoundName(name));
                     } else {
                         return this.serverAssetInfo(asset);
                     }
-                })
-                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+                });
     }
 
     private Uni<AssetInfoData> serverAssetInfo(FlowAsset asset) {
-        return Uni.createFrom().item(() -> this.storages.getStorageRepository(asset.getAssetRepository()))
+        return this.storages.getStorageRepositoryAsync(asset.getAssetRepository())
                 .map(storage -> {
                     AssetInfoData response = AssetInfoData.fromAsset(asset);
                     if (storage == null) {
                         response.setValid(false);
                     } else {
-                        response.setDownloadLink(StorageRepositoryImpl.createDownloadUrl(asset, storage));
+                        response.setDownloadLink(this.tracing.traceBlocking("storage.presign", () -> StorageRepositoryImpl.createDownloadUrl(asset, storage)));
                     }
                     return response;
                 });
@@ -142,45 +410,87 @@ public class ApiRoute {
     @Path("group/{name}")
     @Produces(MediaType.APPLICATION_JSON)
     public Uni<GroupInfoData> groupInfoName(@RestPath String name) {
-        return Uni.createFrom().item(() -> this.groupRepository.getInitialized(name))
-                .onItem().ifNotNull().transformToUni(group -> {
-                    List<Uni<AssetInfoData>> unis = new ArrayList<>();
-                    for (FlowAsset asset : group.getAssets()) {
-                        unis.add(this.serverAssetInfo(asset));
-                    }
-                    return Uni.combine().all().unis(unis).combinedWith(AssetInfoData.class, l -> l);
-                }).onItem().ifNotNull().transform(assets -> {
-                    GroupInfoData data = new GroupInfoData();
-                    data.setFound(true);
-                    data.setGroupName(name);
-                    data.setAssets(assets);
-                    return data;
-                })
+        GroupInfoEvent event = new GroupInfoEvent();
+        event.begin();
+        return this.groupRepository.getCachedByNameAsync(name)
+                .onItem().ifNotNull().transformToUni(group -> this.assetsRepository.getCachedByGroupNameAsync(group.getName())
+                        .invoke(groupAssets -> event.size = groupAssets.stream()
+                                .mapToLong(asset -> asset.getContentSize() == null ? 0 : asset.getContentSize())
+                                .sum())
+                        .flatMap(this::resolveGroupAssets)
+                        .map(assets -> {
+                            GroupInfoData data = new GroupInfoData();
+                            data.setFound(true);
+                            data.setGroupName(name);
+                            data.setAssets(assets);
+                            return data;
+                        }))
                 .onItem().ifNull().continueWith(GroupInfoData.notFound(name))
-                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+                .invoke(data -> {
+                    event.group = name;
+                    event.found = data.isFound();
+                    event.assets = data.getAssets() == null ? 0 : data.getAssets().size();
+                    event.commit();
+                });
+    }
+
+    private Uni<List<AssetInfoData>> resolveGroupAssets(List<FlowAsset> groupAssets) {
+        Map<String, List<FlowAsset>> assets = groupAssets.stream()
+                .collect(Collectors.groupingBy(asset -> Objects.requireNonNullElse(asset.getAssetRepository(), NO_REPOSITORY),
+                        LinkedHashMap::new, Collectors.toList()));
+        List<String> repositoryNames = assets.keySet().stream()
+                .filter(repositoryName -> !repositoryName.equals(NO_REPOSITORY))
+                .toList();
+        return this.storages.getStorageRepositoriesAsync(repositoryNames).map(storages -> {
+            List<AssetInfoData> response = new ArrayList<>();
+            assets.forEach((repositoryName, repositoryAssets) -> {
+                StorageRepositoryImpl storage = storages.get(repositoryName);
+                List<String> downloadUrls = storage == null ? null :
+                        this.tracing.traceBlocking("storage.presign", () -> StorageRepositoryImpl.createDownloadUrls(repositoryAssets, storage));
+                for (int i = 0; i < repositoryAssets.size(); i++) {
+                    AssetInfoData info = AssetInfoData.fromAsset(repositoryAssets.get(i));
+                    if (downloadUrls == null) {
+                        info.setValid(false);
+                    } else {
+                        info.setDownloadLink(downloadUrls.get(i));
+                    }
+                    response.add(info);
+                }
+            });
+            return response;
+        });
     }
 
     @POST
     @Path("asset/upload")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Produces(MediaType.APPLICATION_JSON)
-    public Uni<Response> assetCreate(@MultipartForm UploadFormData form) {
+    public Uni<Response> assetCreate(@MultipartForm UploadFormData form, RoutingContext ctx) {
+        Instant start = ctx.get(REQUEST_START);
+        if (start != null) {
+            this.tracing.record("multipart.receive", start);
+        }
+        // Stages below complete on storage client threads, keep them in the request trace
+        Context context = Context.current();
+
         return Uni.createFrom().item(() -> this.storages.getStorageRepository(form.getRepositoryName()))
                 .onItem().ifNotNull().transform(storage -> Tuple2.of(storage, this.assetsRepository.getByName(form.getAssetName())))
                 .onItem().ifNotNull().transformToUni(tuple -> {
                     StorageRepositoryImpl storage = tuple.getItem1();
                     FlowAsset asset = tuple.getItem2();
 
-                    Uni<FileSnapshot> item = Uni.createFrom()
-                            .item(Unchecked.supplier(() -> FileSnapshot.createSkeleton(form.getAttachment().fileName(), Files.newInputStream(form.getAttachment().filePath()))));
+                    Uni<FileSnapshot> item = Uni.createFrom().item(() -> this.tracing.traceBlocking(context, "snapshot.create",
+                            Unchecked.supplier(() -> FileSnapshot.createSkeleton(form.getAttachment().fileName(), form.getAttachment().filePath()))));
 
                     if (asset == null) {
                         return item.flatMap(snapshot -> {
                             FlowAsset skeleton = new FlowAsset();
                             skeleton.setAssetName(form.getAssetName());
                             skeleton.setAssetRepository(form.getRepositoryName());
-                            return Uni.createFrom().completionStage(FlowAsset.uploadAsset(skeleton, snapshot, this.assetsRepository, storage))
-                                    .map(asset1 -> Response.ok(UploadResponseData.ok(asset1.getAssetName(), asset1.getUuid().toString())).build());
+                            return Uni.createFrom().completionStage(this.tracing.trace(context, "asset.upload",
+                                            () -> FlowAsset.uploadAsset(skeleton, snapshot, this.assetsRepository, storage)))
+                                    .map(asset1 -> this.tracing.traceBlocking(context, "response",
+                                            () -> Response.ok(UploadResponseData.ok(asset1.getAssetName(), asset1.getUuid().toString())).build()));
                         });
                     }
 
@@ -192,20 +502,27 @@ public class ApiRoute {
                             deleteUni = Uni.createFrom().completionStage(storage.deleteSnapshots(asset.getUuid().toString()));
                         }
                     } else {
-                        deleteUni = Uni.createFrom().item(() -> this.storages.getStorageRepository(asset.getAssetRepository()))
-                                .onItem().ifNotNull().transformToUni(s -> Uni.createFrom().completionStage(s.deleteSnapshots(asset.getUuid().toString())))
-                                .invoke(() -> {
-                                    asset.setAssetRepository(form.getRepositoryName());
-                                    this.assetsRepository.save(asset);
+                        String previousRepository = asset.getAssetRepository();
+                        deleteUni = Uni.createFrom().item(() -> this.storages.getStorageRepository(previousRepository))
+                                .flatMap(s -> {
+                                    Uni<Void> deleteSnapshots = s == null ? Uni.createFrom().voidItem() :
+                                            Uni.createFrom().completionStage(s.deleteSnapshots(asset.getUuid().toString()));
+                                    return deleteSnapshots.invoke(() -> {
+                                        asset.setAssetRepository(form.getRepositoryName());
+                                        this.assetsRepository.save(asset);
+                                    }).chain(() -> s == null || !asset.isContentAddressed() ? Uni.createFrom().voidItem() :
+                                            Uni.createFrom().completionStage(FlowAsset.releaseContent(asset.getContentHash(), previousRepository, this.assetsRepository, s)));
                                 });
                     }
 
                     return deleteUni.flatMap(i -> item)
-                            .flatMap(snapshot -> Uni.createFrom().completionStage(FlowAsset.uploadAssetFile(asset, snapshot, this.assetsRepository, storage)))
-                            .map(v -> Response.ok(UploadResponseData.ok(asset.getAssetName(), asset.getUuid().toString())).build());
+                            .flatMap(snapshot -> Uni.createFrom().completionStage(this.tracing.trace(context, "asset.upload",
+                                    () -> FlowAsset.uploadAssetFile(asset, snapshot, this.assetsRepository, storage))))
+                            .map(v -> this.tracing.traceBlocking(context, "response",
+                                    () -> Response.ok(UploadResponseData.ok(asset.getAssetName(), asset.getUuid().toString())).build()));
                 })
                 .onFailure().invoke(err -> Response.status(Status.INTERNAL_SERVER_ERROR).build())
-                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+                .runSubscriptionOn(this.bulkheads.getUploads());
     }
 
     @GET
@@ -218,7 +535,7 @@ public class ApiRoute {
                          Uni.createFrom().completionStage(FlowAsset.deleteAsset(tuple.getItem1(), this.assetsRepository, tuple.getItem2()))
                                  .map(v -> Response.ok(Helper.success(uuid, tuple.getItem1().getAssetName())).build()))
                  .onItem().ifNull().continueWith(() -> Response.ok(Helper.error("not found")).build())
-                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+                .runSubscriptionOn(this.bulkheads.getUploads());
 
     }
 
@@ -241,13 +558,13 @@ public class ApiRoute {
                     }
 
                     Uni<FileSnapshot> item = Uni.createFrom()
-                            .item(Unchecked.supplier(() -> FileSnapshot.createSkeleton(form.getAttachment().fileName(), Files.newInputStream(form.getAttachment().filePath()))));
+                            .item(Unchecked.supplier(() -> FileSnapshot.createSkeleton(form.getAttachment().fileName(), form.getAttachment().filePath())));
                     return deleteUni.flatMap(i -> item)
                             .flatMap(snapshot -> Uni.createFrom().completionStage(FlowAsset.uploadAssetFile(asset, snapshot, this.assetsRepository, storage)))
                             .map(v -> Response.ok(Helper.success(form.getAssetName())).build());
                 })
                 .onFailure().invoke(err -> Response.status(Status.INTERNAL_SERVER_ERROR).build())
-                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+                .runSubscriptionOn(this.bulkheads.getUploads());
 
     }
 }
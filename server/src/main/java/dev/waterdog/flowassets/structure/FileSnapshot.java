@@ -17,18 +17,49 @@ package dev.waterdog.flowassets.structure;
 
 import dev.waterdog.flowassets.utils.Streams;
 import io.vertx.core.buffer.Buffer;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 @Data
-@AllArgsConstructor
 public class FileSnapshot {
     private String uuid;
     private String fileName;
     private Buffer content;
+    // When set, content is streamed from this file instead of being held in memory
+    private Path contentPath;
+    private long contentLength;
+    // SHA-256 of the content, used as blob key by deduplicating storages
+    private String contentHash;
+    private boolean contentAddressed;
+
+    public FileSnapshot(String uuid, String fileName, Buffer content) {
+        this.uuid = uuid;
+        this.fileName = fileName;
+        this.content = content;
+        this.contentLength = content.length();
+    }
+
+    public FileSnapshot(String uuid, String fileName, Path contentPath, long contentLength) {
+        this.uuid = uuid;
+        this.fileName = fileName;
+        this.contentPath = contentPath;
+        this.contentLength = contentLength;
+    }
+
+    public boolean isFileBacked() {
+        return this.contentPath != null;
+    }
+
+    public String computeContentHash() throws IOException {
+        if (this.contentHash == null) {
+            this.contentHash = this.isFileBacked() ? Streams.sha256(this.contentPath) : Streams.sha256(this.content);
+        }
+        return this.contentHash;
+    }
 
     public static FileSnapshot createSkeleton(String fileName, InputStream stream) throws IOException {
         return new FileSnapshot(null, fileName, Streams.readToBuffer(stream));
@@ -37,4 +68,8 @@ public class FileSnapshot {
     public static FileSnapshot createSkeleton(String fileName, Buffer content) {
         return new FileSnapshot(null, fileName, content);
     }
+
+    public static FileSnapshot createSkeleton(String fileName, Path contentPath) throws IOException {
+        return new FileSnapshot(null, fileName, contentPath, Files.size(contentPath));
+    }
 }
@@ -16,31 +16,47 @@
 package dev.waterdog.flowassets.structure;
 
 import dev.waterdog.flowassets.repositories.AssetsRepository;
+import dev.waterdog.flowassets.repositories.storage.BlobReferences;
 import dev.waterdog.flowassets.repositories.storage.StorageRepositoryImpl;
+import dev.waterdog.flowassets.tracing.FlowTracing;
+import dev.waterdog.flowassets.utils.Bulkhead;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
 import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
-import org.apache.commons.lang3.tuple.Pair;
+import lombok.extern.jbosslog.JBossLog;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Type;
 
 import javax.persistence.*;
+import java.io.IOException;
+import java.time.Instant;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+@JBossLog
 @Entity
 @ToString(callSuper = true)
 @Getter @Setter
 @Table(name = "assets")
+@NamedEntityGraph(name = FlowAsset.GRAPH_INFO, attributeNodes = @NamedAttributeNode("deployPath"))
 public class FlowAsset extends PanacheEntityBase {
+    // Everything AssetInfoData needs, group memberships are left out
+    public static final String GRAPH_INFO = "FlowAsset.info";
 
+    // Stored as 16 bytes, API and file paths still use the textual form
     @Id
-    @Type(type = "uuid-char")
-    @GeneratedValue(generator = "uuid2")
-    @GenericGenerator(name = "uuid2", strategy = "uuid2")
-    @Column(name = "uuid", unique = true, columnDefinition = "varchar(36)")
+    @Type(type = "uuid-binary")
+    @GeneratedValue(generator = "uuid7")
+    @GenericGenerator(name = "uuid7", strategy = "dev.waterdog.flowassets.utils.UuidV7Generator")
+    @Column(name = "uuid", unique = true, columnDefinition = "binary(16)")
     private UUID uuid;
 
     @Column(name = "asset_name")
@@ -52,13 +68,27 @@ public class FlowAsset extends PanacheEntityBase {
     @Column(name = "asset_repository")
     private String assetRepository;
 
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Content is stored as shared blob keyed by content hash instead of uuid/fileName
+    @Column(name = "content_addressed")
+    private boolean contentAddressed;
+
+    @Column(name = "content_size")
+    private Long contentSize;
+
+    @Column(name = "last_modified")
+    private Instant lastModified;
+
     @ToString.Exclude
-    @ManyToOne(optional = true)
+    @ManyToOne(optional = true, fetch = FetchType.LAZY)
     @JoinColumn(name = "path_id", referencedColumnName = "id")
     private DeployPath deployPath;
 
     @ToString.Exclude
-    @ManyToMany(fetch = FetchType.EAGER, cascade = CascadeType.ALL)
+    @BatchSize(size = 64)
+    @ManyToMany(fetch = FetchType.LAZY, cascade = CascadeType.ALL)
     @JoinTable(name = "groups_join",
             joinColumns = @JoinColumn(name = "asset_id", referencedColumnName = "uuid"),
             inverseJoinColumns = @JoinColumn(name = "group_id", referencedColumnName = "id"))
@@ -66,26 +96,112 @@ public class FlowAsset extends PanacheEntityBase {
 
     public static CompletableFuture<FlowAsset> uploadAsset(FlowAsset skeleton, FileSnapshot fileSnapshot,
                                                            AssetsRepository assetsRepository, StorageRepositoryImpl storageRepository) {
-        return CompletableFuture.supplyAsync(() -> assetsRepository.save(skeleton)).thenApply(asset -> {
-            fileSnapshot.setUuid(asset.getUuid().toString());
-            return Pair.of(asset, fileSnapshot);
-        }).thenCompose(pair -> storageRepository.saveFileSnapshot(pair.getRight()).thenApply(i -> pair))
-                .thenCompose(pair -> uploadAssetFile(pair.getLeft(), pair.getRight(), assetsRepository, storageRepository));
+        FlowTracing tracing = assetsRepository.getTracing();
+        Context context = Context.current();
+        return tracing.trace(context, "asset.save", () -> assetsRepository.getBulkheads().getUploads().supply(() -> assetsRepository.save(skeleton)))
+                .thenCompose(asset -> {
+                    try (Scope scope = context.makeCurrent()) {
+                        return uploadAssetFile(asset, fileSnapshot, assetsRepository, storageRepository);
+                    }
+                });
     }
 
     public static CompletableFuture<FlowAsset> uploadAssetFile(FlowAsset asset, FileSnapshot fileSnapshot,
                                                            AssetsRepository assetsRepository, StorageRepositoryImpl storageRepository) {
         fileSnapshot.setUuid(asset.getUuid().toString());
-        return CompletableFuture.runAsync(() -> storageRepository.saveFileSnapshot(fileSnapshot))
-                .thenApply(i -> {
+        String previousHash = asset.isContentAddressed() ? asset.getContentHash() : null;
+        // File of previous upload without deduplication, it is left behind when the content moves to a blob
+        String previousFileName = asset.isContentAddressed() || asset.getAssetLocation() == null ? null : StorageRepositoryImpl.getAssetFileName(asset);
+        FlowTracing tracing = assetsRepository.getTracing();
+        BlobReferences blobReferences = assetsRepository.getBlobReferences();
+        AtomicBoolean uploadRegistered = new AtomicBoolean();
+        // Stages continue on storage client threads, so every stage is parented explicitly
+        Context context = Context.current();
+        return tracing.trace(context, "snapshot.hash", () -> assetsRepository.getBulkheads().getUploads().run(() -> {
+                    try {
+                        fileSnapshot.computeContentHash();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to hash " + fileSnapshot.getFileName(), e);
+                    }
+                }))
+                .thenCompose(i -> {
+                    // Existing blob found by the storage must not be deleted before the asset references it
+                    CompletableFuture<Void> deletion = blobReferences.beginUpload(asset.getAssetRepository(), fileSnapshot.getContentHash());
+                    uploadRegistered.set(true);
+                    return deletion;
+                })
+                .thenCompose(i -> tracing.trace(context, "storage.write", () -> storageRepository.saveFileSnapshot(fileSnapshot)))
+                .thenCompose(i -> tracing.trace(context, "asset.update", () -> assetsRepository.getBulkheads().getUploads().supply(() -> {
                     asset.setAssetLocation(asset.getUuid() + "/" + fileSnapshot.getFileName());
+                    asset.setContentHash(fileSnapshot.getContentHash());
+                    asset.setContentAddressed(fileSnapshot.isContentAddressed());
+                    asset.setContentSize(fileSnapshot.getContentLength());
+                    asset.setLastModified(Instant.now());
                     assetsRepository.save(asset);
                     return asset;
+                })))
+                .whenComplete((i, error) -> {
+                    if (uploadRegistered.get()) {
+                        blobReferences.endUpload(asset.getAssetRepository(), fileSnapshot.getContentHash());
+                    }
+                })
+                .thenCompose(i -> {
+                    if (previousFileName == null || !asset.isContentAddressed()) {
+                        return CompletableFuture.completedFuture(asset);
+                    }
+                    return tracing.trace(context, "snapshot.delete", () -> storageRepository.deleteReplacedSnapshot(asset.getUuid().toString(), previousFileName))
+                            .exceptionally(error -> {
+                                // Asset was already updated, the file is only left unused
+                                log.error("Failed to delete replaced file " + asset.getUuid() + "/" + previousFileName + " in " + asset.getAssetRepository(), error);
+                                return null;
+                            })
+                            .thenApply(v -> asset);
+                })
+                .thenCompose(i -> {
+                    if (previousHash == null || (asset.isContentAddressed() && previousHash.equals(asset.getContentHash()))) {
+                        return CompletableFuture.completedFuture(asset);
+                    }
+                    return tracing.trace(context, "content.release",
+                            () -> releaseContent(previousHash, asset.getAssetRepository(), assetsRepository, storageRepository))
+                            .thenApply(v -> asset);
                 });
     }
 
     public static CompletableFuture<Void> deleteAsset(FlowAsset asset, AssetsRepository assetsRepository, StorageRepositoryImpl storageRepository) {
-        return CompletableFuture.runAsync(() -> storageRepository.deleteSnapshots(asset.getUuid().toString()))
-                .thenRun(() -> assetsRepository.remove(asset));
+        return storageRepository.deleteSnapshots(asset.getUuid().toString())
+                .thenRunAsync(() -> assetsRepository.remove(asset), assetsRepository.getBulkheads().getUploads())
+                .thenCompose(i -> asset.isContentAddressed() ?
+                        releaseContent(asset.getContentHash(), asset.getAssetRepository(), assetsRepository, storageRepository) :
+                        CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Removes blob from storage once no asset in the repository references it anymore. Another upload may be
+     * about to reference the blob, so it is deleted only after a grace period and when it is still unreferenced then.
+     * Failures are only logged, as the asset itself was already updated.
+     */
+    public static CompletableFuture<Void> releaseContent(String contentHash, String repository,
+                                                         AssetsRepository assetsRepository, StorageRepositoryImpl storageRepository) {
+        BlobReferences blobReferences = assetsRepository.getBlobReferences();
+        Bulkhead uploads = assetsRepository.getBulkheads().getUploads();
+        return uploads.supply(() -> assetsRepository.countContentReferences(contentHash, repository))
+                .thenAccept(references -> {
+                    if (references > 0) {
+                        return;
+                    }
+
+                    Executor delayed = CompletableFuture.delayedExecutor(blobReferences.getGracePeriod().toMillis(), TimeUnit.MILLISECONDS);
+                    CompletableFuture.runAsync(() -> {}, delayed)
+                            .thenCompose(i -> blobReferences.delete(repository, contentHash, () -> uploads.supply(() -> assetsRepository.countContentReferences(contentHash, repository))
+                                    .thenCompose(count -> count > 0 ? CompletableFuture.completedFuture(false) : storageRepository.deleteBlob(contentHash).thenApply(v -> true))))
+                            .exceptionally(error -> {
+                                log.error("Failed to delete blob " + contentHash + " in " + repository, error);
+                                return null;
+                            });
+                })
+                .exceptionally(error -> {
+                    log.error("Failed to release blob " + contentHash + " in " + repository, error);
+                    return null;
+                });
     }
 }
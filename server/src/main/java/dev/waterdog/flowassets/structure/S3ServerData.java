@@ -50,4 +50,8 @@ public class S3ServerData extends PanacheEntity {
 
     @Column(name = "region_name")
     private String regionName;
+
+    // Validity of presigned download links in seconds, server default is used when not set
+    @Column(name = "signature_duration")
+    private Integer signatureDuration;
 }
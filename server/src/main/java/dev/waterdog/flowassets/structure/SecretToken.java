@@ -65,14 +65,22 @@ public class SecretToken extends PanacheEntity {
         return secretToken;
     }
 
-    public static String createTokenHash(String token) {
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
         try {
-            MessageDigest digest = MessageDigest.getInstance("MD5");
-            byte[] bytes = digest.digest(token.getBytes(StandardCharsets.UTF_8));
-            return new String(bytes, StandardCharsets.UTF_8);
+            return MessageDigest.getInstance("MD5");
         } catch (NoSuchAlgorithmException e) {
             return null;
         }
+    });
+
+    public static String createTokenHash(String token) {
+        MessageDigest digest = DIGEST.get();
+        if (digest == null) {
+            return null;
+        }
+        // Must stay compatible with hashes already stored in database
+        byte[] bytes = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
 }
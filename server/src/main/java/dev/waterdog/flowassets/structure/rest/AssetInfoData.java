@@ -28,6 +28,10 @@ public class AssetInfoData {
     private String downloadLink;
     private String deployPath;
     private String fileName;
+    // SHA-256 of the file, null for assets uploaded before digests were recorded
+    private String contentHash;
+    private Long contentSize;
+    private Long lastModified;
 
     public static AssetInfoData notFound(String uuid) {
         AssetInfoData response = new AssetInfoData();
@@ -56,6 +60,11 @@ public class AssetInfoData {
             response.setDeployPath(asset.getDeployPath().getPath());
         }
         response.setFileName(asset.getAssetLocation().substring(asset.getAssetLocation().lastIndexOf('/') + 1));
+        response.setContentHash(asset.getContentHash());
+        response.setContentSize(asset.getContentSize());
+        if (asset.getLastModified() != null) {
+            response.setLastModified(asset.getLastModified().toEpochMilli());
+        }
         return response;
     }
 }
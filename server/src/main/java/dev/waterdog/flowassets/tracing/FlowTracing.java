@@ -0,0 +1,119 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.tracing;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.inject.Produces;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Creates spans for stages of asynchronous pipelines. Stages run on different threads,
+ * so parent context is passed explicitly where it can not be taken from the current thread.
+ */
+@JBossLog
+@Singleton
+public class FlowTracing {
+
+    @Inject
+    Tracer tracer;
+
+    /**
+     * Exports spans to a local JSON lines file for offline analysis, in addition to configured exporters.
+     * Static, because the tracer this bean depends on is built from all span processors.
+     */
+    @Produces
+    @Singleton
+    static SpanProcessor localExporter(@ConfigProperty(name = "flowassets.tracing.local-file") Optional<String> file) {
+        if (file.isEmpty()) {
+            return SpanProcessor.composite(List.of());
+        }
+        log.info("Exporting traces to " + file.get());
+        return BatchSpanProcessor.builder(new JsonFileSpanExporter(Paths.get(file.get()))).build();
+    }
+
+    public <T> CompletableFuture<T> trace(String name, Supplier<CompletableFuture<T>> stage) {
+        return this.trace(Context.current(), name, stage);
+    }
+
+    /**
+     * Runs stage within a new span, which ends once the returned future completes.
+     */
+    public <T> CompletableFuture<T> trace(Context parent, String name, Supplier<CompletableFuture<T>> stage) {
+        Span span = this.tracer.spanBuilder(name)
+                .setParent(parent)
+                .startSpan();
+
+        CompletableFuture<T> future;
+        try (Scope scope = parent.with(span).makeCurrent()) {
+            future = stage.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, error) -> end(span, error));
+    }
+
+    public <T> T traceBlocking(String name, Supplier<T> action) {
+        return this.traceBlocking(Context.current(), name, action);
+    }
+
+    public <T> T traceBlocking(Context parent, String name, Supplier<T> action) {
+        Span span = this.tracer.spanBuilder(name)
+                .setParent(parent)
+                .startSpan();
+        try (Scope scope = parent.with(span).makeCurrent()) {
+            T result = action.get();
+            span.end();
+            return result;
+        } catch (RuntimeException e) {
+            end(span, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Records span for work which has already finished, e.g. before any application code was called.
+     */
+    public void record(String name, Instant start) {
+        this.tracer.spanBuilder(name)
+                .setStartTimestamp(start)
+                .startSpan()
+                .end();
+    }
+
+    private static void end(Span span, Throwable error) {
+        if (error != null) {
+            span.recordException(error);
+            span.setStatus(StatusCode.ERROR);
+        }
+        span.end();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import io.opentelemetry.context.Context;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many asynchronous tasks may run at the same time.
+ * Tasks above the limit are queued and started once a running task completes.
+ */
+public class AsyncLimiter {
+
+    private final String name;
+    private final int limit;
+    private final int maxQueued;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final LongAdder rejected = new LongAdder();
+
+    public AsyncLimiter(int limit) {
+        this("async", limit, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates limiter which rejects tasks with {@link Bulkhead.BulkheadFullException} once maxQueued tasks are waiting.
+     */
+    public AsyncLimiter(String name, int limit, int maxQueued) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        this.name = name;
+        this.limit = limit;
+        this.maxQueued = maxQueued;
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        if (this.queued.incrementAndGet() > this.maxQueued) {
+            this.queued.decrementAndGet();
+            this.rejected.increment();
+            return CompletableFuture.failedFuture(new Bulkhead.BulkheadFullException(this.name));
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        // Queued task may be started by whichever task completes first, keep the context it was submitted from
+        this.queue.add(Context.current().wrap(() -> {
+            CompletableFuture<T> result;
+            try {
+                result = task.get();
+            } catch (Throwable t) {
+                result = CompletableFuture.failedFuture(t);
+            }
+
+            result.whenComplete((value, error) -> {
+                this.active.decrementAndGet();
+                this.drain();
+
+                if (error == null) {
+                    future.complete(value);
+                } else {
+                    future.completeExceptionally(error);
+                }
+            });
+        }));
+        this.drain();
+        return future;
+    }
+
+    private void drain() {
+        // Tasks completing synchronously call drain() from inside task.run(). Only the first caller starts
+        // tasks, nested and concurrent callers just request another pass, so the stack does not grow.
+        if (this.drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            this.startQueued();
+            missed = this.drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void startQueued() {
+        while (!this.queue.isEmpty()) {
+            int current = this.active.get();
+            if (current >= this.limit) {
+                return;
+            }
+
+            if (!this.active.compareAndSet(current, current + 1)) {
+                continue;
+            }
+
+            Runnable task = this.queue.poll();
+            if (task == null) {
+                this.active.decrementAndGet();
+            } else {
+                this.queued.decrementAndGet();
+                task.run();
+            }
+        }
+    }
+
+    public int getActive() {
+        return this.active.get();
+    }
+
+    public int getQueued() {
+        return this.queued.get();
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import io.opentelemetry.context.Context;
+import lombok.Getter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Executor with bounded concurrency and bounded queue. Work submitted to a full
+ * bulkhead is rejected, so one kind of slow work can not starve the others.
+ * <p>
+ * Platform threads are pooled. With virtual threads every task gets its own thread instead,
+ * tasks over the limit wait for a permit, which keeps blocking in them cheap.
+ */
+public class Bulkhead implements Executor {
+
+    @Getter
+    private final String name;
+    @Getter
+    private final int size;
+    private final int queueSize;
+    private final LongAdder rejected = new LongAdder();
+
+    // Pooled platform threads
+    private final ThreadPoolExecutor executor;
+
+    // Thread per task
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private volatile boolean shutdown;
+
+    public Bulkhead(String name, int size, int queueSize, ThreadFactory threadFactory, boolean threadPerTask) {
+        this.name = name;
+        this.size = size;
+        this.queueSize = Math.max(1, queueSize);
+        if (threadPerTask) {
+            this.executor = null;
+            this.threadFactory = threadFactory;
+            this.permits = new Semaphore(size, true);
+        } else {
+            this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(this.queueSize), threadFactory);
+            this.executor.allowCoreThreadTimeOut(true);
+            this.threadFactory = null;
+            this.permits = null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        // Tasks continue the trace they were submitted from
+        Runnable task = Context.current().wrap(command);
+        if (this.executor == null) {
+            this.startThread(task);
+            return;
+        }
+
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            this.rejected.increment();
+            throw new BulkheadFullException(this.name);
+        }
+    }
+
+    private void startThread(Runnable task) {
+        if (this.shutdown) {
+            this.rejected.increment();
+            throw new BulkheadFullException(this.name);
+        }
+        if (this.admitted.incrementAndGet() > this.size + this.queueSize) {
+            this.admitted.decrementAndGet();
+            this.rejected.increment();
+            throw new BulkheadFullException(this.name);
+        }
+
+        try {
+            this.threadFactory.newThread(() -> {
+                this.permits.acquireUninterruptibly();
+                try {
+                    task.run();
+                } finally {
+                    this.permits.release();
+                    this.admitted.decrementAndGet();
+                    this.completed.increment();
+                }
+            }).start();
+        } catch (RuntimeException | Error e) {
+            this.admitted.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, this);
+        } catch (BulkheadFullException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public CompletableFuture<Void> run(Runnable runnable) {
+        try {
+            return CompletableFuture.runAsync(runnable, this);
+        } catch (BulkheadFullException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public void shutdown() {
+        this.shutdown = true;
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    public int getActive() {
+        return this.executor == null ? this.size - this.permits.availablePermits() : this.executor.getActiveCount();
+    }
+
+    public int getQueued() {
+        return this.executor == null ? Math.max(0, this.admitted.get() - this.getActive()) : this.executor.getQueue().size();
+    }
+
+    public long getCompleted() {
+        return this.executor == null ? this.completed.sum() : this.executor.getCompletedTaskCount();
+    }
+
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+
+    public static boolean isRejection(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof BulkheadFullException;
+    }
+
+    public static class BulkheadFullException extends RejectedExecutionException {
+        public BulkheadFullException(String name) {
+            super("Bulkhead " + name + " is full");
+        }
+    }
+}
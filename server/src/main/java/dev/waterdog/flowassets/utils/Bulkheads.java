@@ -0,0 +1,155 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import dev.waterdog.flowassets.metrics.FlowMetrics;
+import lombok.Getter;
+import lombok.extern.jbosslog.JBossLog;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Separate executors for each kind of blocking work, so slow file or storage operations
+ * can not take all threads needed for metadata lookups. When enabled and supported by the JVM,
+ * every task runs on its own virtual thread, otherwise on pooled named platform threads.
+ */
+@JBossLog
+@Getter
+@Singleton
+public class Bulkheads {
+
+    @Inject
+    @ConfigProperty(name = "flowassets.executor.virtual-threads", defaultValue = "false")
+    boolean virtualThreads;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.metadata.size", defaultValue = "16")
+    int metadataSize;
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.metadata.queue", defaultValue = "256")
+    int metadataQueue;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.file-io.size", defaultValue = "8")
+    int fileIoSize;
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.file-io.queue", defaultValue = "128")
+    int fileIoQueue;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.uploads.size", defaultValue = "8")
+    int uploadsSize;
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.uploads.queue", defaultValue = "64")
+    int uploadsQueue;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.s3.concurrency", defaultValue = "64")
+    int s3Concurrency;
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.s3.queue", defaultValue = "1024")
+    int s3Queue;
+
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.s3-streams.concurrency", defaultValue = "32")
+    int s3StreamsConcurrency;
+    @Inject
+    @ConfigProperty(name = "flowassets.bulkhead.s3-streams.queue", defaultValue = "256")
+    int s3StreamsQueue;
+
+    @Inject
+    FlowMetrics metrics;
+
+    private boolean virtual;
+    private Bulkhead metadata;
+    private Bulkhead fileIo;
+    private Bulkhead uploads;
+    private AsyncLimiter s3;
+    private AsyncLimiter s3Streams;
+
+    @PostConstruct
+    void init() {
+        this.virtual = this.virtualThreads && supportsVirtualThreads();
+        if (this.virtualThreads && !this.virtual) {
+            log.warn("Virtual threads are not available on Java " + Runtime.version() + ", using platform threads instead");
+        }
+
+        this.metadata = this.create("metadata", this.metadataSize, this.metadataQueue);
+        this.fileIo = this.create("file-io", this.fileIoSize, this.fileIoQueue);
+        this.uploads = this.create("uploads", this.uploadsSize, this.uploadsQueue);
+        this.s3 = new AsyncLimiter("s3", Math.max(1, this.s3Concurrency), this.s3Queue);
+        this.s3Streams = new AsyncLimiter("s3-streams", Math.max(1, this.s3StreamsConcurrency), this.s3StreamsQueue);
+
+        for (Bulkhead bulkhead : this.getExecutors()) {
+            this.metrics.monitorBulkhead(bulkhead);
+        }
+        this.metrics.monitorLimiter(this.s3);
+        this.metrics.monitorLimiter(this.s3Streams);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Bulkhead bulkhead : this.getExecutors()) {
+            bulkhead.shutdown();
+        }
+    }
+
+    public List<Bulkhead> getExecutors() {
+        return List.of(this.metadata, this.fileIo, this.uploads);
+    }
+
+    private Bulkhead create(String name, int size, int queue) {
+        ThreadFactory factory = this.virtual ? virtualThreadFactory(name) : platformThreadFactory(name);
+        return new Bulkhead(name, Math.max(1, size), queue, factory, this.virtual);
+    }
+
+    private static ThreadFactory platformThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "flowassets-" + name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            // Looked up reflectively, so the server still builds and runs on Java 17
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "flowassets-" + name + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("Can not create virtual thread factory", e);
+        }
+    }
+
+    private static boolean supportsVirtualThreads() {
+        try {
+            virtualThreadFactory("probe");
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+}
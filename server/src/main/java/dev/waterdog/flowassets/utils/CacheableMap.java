@@ -15,48 +15,74 @@
 
 package dev.waterdog.flowassets.utils;
 
-import lombok.AllArgsConstructor;
-import lombok.Getter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.waterdog.flowassets.jfr.CacheExpirationEvent;
+import dev.waterdog.flowassets.jfr.CacheLoadEvent;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
-import java.util.*;
-import java.util.concurrent.*;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
-public class CacheableMap<K, V> implements Map<K, V> {
-
-    private static final ScheduledExecutorService defaultExecutor = Executors.newSingleThreadScheduledExecutor();
-
-    private final Map<K, Entry<V>> backedMap;
-    private final ScheduledExecutorService executor;
+/**
+ * Map view of an expiring Caffeine cache. Entries expire after the configured time since they were written
+ * and, when maximum size is set, least valuable entries are evicted first.
+ */
+public class CacheableMap<K, V> implements ConcurrentMap<K, V> {
+    private static final String DEFAULT_NAME = "cache";
 
-    private final int timeout;
-    private final TimeUnit unit;
-    private final BiConsumer<K, V> expiredConsumer;
+    private final String name;
+    private final Cache<K, V> cache;
+    private final ConcurrentMap<K, V> backedMap;
+    // Incremented by clear(), lets asynchronous loaders detect that their value became stale
+    private final AtomicLong generation = new AtomicLong();
 
     public static <K, V> Builder<K, V> builder() {
         return new Builder<>();
     }
 
-    public CacheableMap(Map<K, Entry<V>> backedMap, ScheduledExecutorService executor, int timeout, TimeUnit unit, BiConsumer<K, V> expiredConsumer) {
-        this.backedMap = backedMap;
-        this.executor = executor;
-        this.timeout = timeout;
-        this.unit = unit;
-        this.expiredConsumer = expiredConsumer;
+    public CacheableMap(Cache<K, V> cache) {
+        this(DEFAULT_NAME, cache);
     }
 
-    private Entry<V> createEntry(K key, V value) {
-        ScheduledFuture<?> future = this.executor.schedule(() -> this.onTimeout(key), this.timeout, this.unit);
-        return new Entry<>(value, System.currentTimeMillis(), future);
+    public CacheableMap(String name, Cache<K, V> cache) {
+        this.name = name;
+        this.cache = cache;
+        this.backedMap = cache.asMap();
     }
 
-    private void onTimeout(K key) {
-        Entry<V> value = this.backedMap.remove(key);
-        if (value != null && this.expiredConsumer != null) {
-            this.expiredConsumer.accept(key, value.getValue());
-        }
+    /**
+     * Same as {@link #get(Object)}, but the lookup is recorded in cache statistics.
+     */
+    public V getIfPresent(K key) {
+        return this.cache.getIfPresent(key);
+    }
+
+    public CacheStats stats() {
+        return this.cache.stats();
+    }
+
+    public long estimatedSize() {
+        return this.cache.estimatedSize();
+    }
+
+    /**
+     * Removes expired entries now instead of waiting for the next cache access.
+     */
+    public void cleanUp() {
+        this.cache.cleanUp();
     }
 
     @Override
@@ -81,40 +107,42 @@ public class CacheableMap<K, V> implements Map<K, V> {
 
     @Override
     public V get(Object key) {
-        Entry<V> value = this.backedMap.get(key);
-        return value == null ? null : value.getValue();
+        return this.backedMap.get(key);
     }
 
     @Override
     public V put(K key, V value) {
-        Entry<V> entry = this.backedMap.put(key, this.createEntry(key, value));
-        if (entry != null) {
-            entry.getFuture().cancel(true);
-            return entry.getValue();
-        }
-        return null;
+        return this.backedMap.put(key, value);
     }
 
     @Override
     public V remove(Object key) {
-        Entry<V> entry = this.backedMap.remove(key);
-        if (entry != null) {
-            entry.getFuture().cancel(true);
-            return entry.getValue();
-        }
-        return null;
+        return this.backedMap.remove(key);
     }
 
     @Override
     public void putAll(Map<? extends K, ? extends V> m) {
-        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
-            this.put(entry.getKey(), entry.getValue());
-        }
+        this.backedMap.putAll(m);
     }
 
     @Override
     public void clear() {
-        this.backedMap.forEach((key, val) -> this.remove(key));
+        this.generation.incrementAndGet();
+        this.backedMap.clear();
+    }
+
+    public long getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Stores value loaded outside of the cache, unless the cache was cleared since the load started.
+     * @param generation result of {@link #getGeneration()} taken before the value was loaded
+     * @return whether the value was stored
+     */
+    public boolean putIfGeneration(K key, V value, long generation) {
+        // Runs under the entry lock, so clear() either sees the new value or this sees the new generation
+        return this.backedMap.compute(key, (k, previous) -> this.generation.get() == generation ? value : previous) == value;
     }
 
     @Override
@@ -124,60 +152,71 @@ public class CacheableMap<K, V> implements Map<K, V> {
 
     @Override
     public Collection<V> values() {
-        return new AbstractCollection<V>() {
-
-            @Override
-            public Iterator<V> iterator() {
-                Iterator<Map.Entry<K, Entry<V>>> iterator = CacheableMap.this.backedMap.entrySet().iterator();
-                return new AbstractIterator<V>() {
-
-                    @Override
-                    protected V computeNext() {
-                        if (!iterator.hasNext()) {
-                            return this.endOfData();
-                        }
-
-                        return iterator.next().getValue().getValue();
-                    }
-                };
-            }
+        return this.backedMap.values();
+    }
 
-            @Override
-            public int size() {
-                return CacheableMap.this.backedMap.size();
-            }
-        };
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return this.backedMap.entrySet();
     }
 
     @Override
-    public Set<Map.Entry<K, V>> entrySet() {
-        Set<Map.Entry<K, V>> entries = new HashSet<>();
-        for (Map.Entry<K, Entry<V>> entry : this.backedMap.entrySet()) {
-            entries.add(new Map.Entry<K, V>() {
-                @Override
-                public K getKey() {
-                    return entry.getKey();
-                }
+    public V putIfAbsent(K key, V value) {
+        return this.backedMap.putIfAbsent(key, value);
+    }
 
-                @Override
-                public V getValue() {
-                    return entry.getValue().getValue();
-                }
+    @Override
+    public boolean remove(Object key, Object value) {
+        return this.backedMap.remove(key, value);
+    }
 
-                @Override
-                public V setValue(V value) {
-                    Entry<V> val = entry.setValue(createEntry(this.getKey(), value));
-                    if (val != null) {
-                        val.getFuture().cancel(true);
-                        return val.getValue();
-                    }
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        return this.backedMap.replace(key, oldValue, newValue);
+    }
 
-                    return null;
-                }
-            });
-        }
+    @Override
+    public V replace(K key, V value) {
+        return this.backedMap.replace(key, value);
+    }
 
-        return entries;
+    /**
+     * Loads missing value atomically, concurrent callers for the same key wait for a single load.
+     * Each load is recorded as {@link CacheLoadEvent}.
+     */
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        return this.backedMap.computeIfAbsent(key, k -> {
+            CacheLoadEvent event = new CacheLoadEvent();
+            event.begin();
+            V value = mappingFunction.apply(k);
+            if (event.shouldCommit()) {
+                event.cache = this.name;
+                event.key = String.valueOf(k);
+                event.found = value != null && !(value instanceof Optional<?> optional && optional.isEmpty());
+                event.commit();
+            }
+            return value;
+        });
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return this.backedMap.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return this.backedMap.compute(key, remappingFunction);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return this.backedMap.merge(key, value, remappingFunction);
     }
 
     @Override
@@ -194,92 +233,57 @@ public class CacheableMap<K, V> implements Map<K, V> {
         return this.backedMap.hashCode();
     }
 
+    @Override
+    public String toString() {
+        return this.backedMap.toString();
+    }
+
     @Setter
     @Accessors(fluent = true)
     public static class Builder<K, V> {
-        private Map<K,  Entry<V>> backedMap = new ConcurrentHashMap<>();
-        private ScheduledExecutorService executor = defaultExecutor;
+        // Only used to remove expired entries promptly, expiration itself does not depend on it
+        private ScheduledExecutorService executor;
+        private String name = DEFAULT_NAME;
         private int timeout;
         private TimeUnit unit;
+        private long maximumSize = -1;
+        private boolean recordStats = true;
         private BiConsumer<K, V> expiredConsumer;
 
         public CacheableMap<K, V> build() {
             if (this.timeout == 0 || this.unit == null) {
                 throw new IllegalStateException("No timeout defined!");
             }
-            return new CacheableMap<>(this.backedMap, this.executor, this.timeout, this.unit, this.expiredConsumer);
-        }
-    }
-
-    @Getter
-    @AllArgsConstructor
-    private static class Entry<V> {
-        private final V value;
-        private final long insertTime;
-        private final ScheduledFuture<?> future;
-    }
 
-    private abstract static class AbstractIterator<T> implements Iterator<T> {
-        private enum State {
-            READY,
-            NOT_READY,
-            DONE,
-            FAILED,
-        }
-
-        private State state = State.NOT_READY;
-        private T next;
-
-        protected abstract T computeNext();
-
-
-        protected final T endOfData() {
-            this.state = State.DONE;
-            return null;
-        }
-
-        @Override
-        public final boolean hasNext() {
-            if (this.state == State.FAILED) {
-                throw new IllegalStateException();
+            Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                    .expireAfterWrite(this.timeout, this.unit)
+                    .scheduler(this.executor == null ? Scheduler.systemScheduler() : Scheduler.forScheduledExecutorService(this.executor));
+            if (this.maximumSize >= 0) {
+                builder.maximumSize(this.maximumSize);
             }
-
-            switch (this.state) {
-                case DONE:
-                    return false;
-                case READY:
-                    return true;
-                default:
+            if (this.recordStats) {
+                builder.recordStats();
             }
-            return tryToComputeNext();
-        }
 
-        private boolean tryToComputeNext() {
-            this.state = State.FAILED;
-            this.next = computeNext();
-            if (this.state != State.DONE) {
-                this.state = State.READY;
-                return true;
-            }
-            return false;
-        }
+            String name = this.name;
+            BiConsumer<K, V> expiredConsumer = this.expiredConsumer;
+            // Called for expired entries as well as for entries evicted because of size limit
+            builder.<K, V>evictionListener((key, value, cause) -> {
+                CacheExpirationEvent event = new CacheExpirationEvent();
+                if (event.shouldCommit()) {
+                    event.cache = name;
+                    event.key = String.valueOf(key);
+                    event.cause = cause.name();
+                    event.commit();
+                }
 
-        @Override
-        public final T next() {
-            if (!hasNext()) {
-                throw new NoSuchElementException();
-            }
-            this.state = State.NOT_READY;
-            T result = this.next;
-            this.next = null;
-            return result;
-        }
+                if (expiredConsumer != null) {
+                    expiredConsumer.accept(key, value);
+                }
+            });
 
-        public final T peek() {
-            if (!this.hasNext()) {
-                throw new NoSuchElementException();
-            }
-            return this.next;
+            Cache<K, V> cache = builder.build();
+            return new CacheableMap<>(name, cache);
         }
     }
 }
@@ -17,13 +17,18 @@ package dev.waterdog.flowassets.utils;
 
 import com.vaadin.flow.data.provider.CallbackDataProvider;
 import com.vaadin.flow.data.provider.DataProvider;
+import com.vaadin.flow.data.provider.QuerySortOrder;
 import com.vaadin.flow.function.ValueProvider;
 import dev.waterdog.flowassets.repositories.AbstractRepository;
+import dev.waterdog.flowassets.repositories.PageCursor;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -86,23 +91,64 @@ public class DataProviderBuilder<T, R> {
                 val -> val : this.identifierGetter;
 
 
+        PageCursors cursors = new PageCursors();
         return new CallbackDataProvider<>(query -> {
+            String filter = query.getFilter().filter(value -> !value.isBlank()).orElse(null);
+            List<QuerySortOrder> sortOrders = query.getSortOrders();
+            String queryKey = filter + "\n" + sortOrders.stream()
+                    .map(order -> order.getSorted() + ":" + order.getDirection())
+                    .collect(Collectors.joining(","));
+
+            // Grid scrolls page after page, seek from end of the previous page when it is known
+            PageCursor cursor = query.getOffset() == 0 ? null : cursors.get(queryKey, query.getOffset());
             List<T> list;
-            if (query.getFilter().isPresent()) {
-                list = this.repository.findByName(query.getFilter().get(), query.getPage(), query.getPageSize());
+            if (cursor == null) {
+                list = this.repository.findPage(filter, sortOrders, query.getOffset(), query.getLimit());
             } else {
-                list = this.repository.getAll(query.getPage(), query.getPageSize());
+                list = this.repository.findPage(filter, sortOrders, cursor, query.getLimit());
             }
 
-            if (this.extraValues == null || this.extraValues.length == 0) {
+            if (!list.isEmpty()) {
+                PageCursor next = this.repository.createCursor(list.get(list.size() - 1), sortOrders);
+                if (next != null) {
+                    cursors.put(queryKey, query.getOffset() + list.size(), next);
+                }
+            }
+
+            // Extra values follow after last database row
+            if (this.extraValues == null || this.extraValues.length == 0 || list.size() >= query.getLimit()) {
                 return this.mapper.apply(list.stream());
             }
-            return Stream.concat(mapper.apply(list.stream()), Stream.of(extraValues));
+            return Stream.concat(mapper.apply(list.stream()), Stream.of(extraValues).limit(query.getLimit() - list.size()));
         }, query -> {
+            // Count is queried again after refresh, rows might have moved since cursors were created
+            cursors.clear();
             int extraCount = this.extraValues == null ? 0 : this.extraValues.length;
-            return (int) (query.getFilter().isPresent() ? this.repository.countByName(query.getFilter().get()) : repository.count()) + extraCount;
+            String filter = query.getFilter().filter(value -> !value.isBlank()).orElse(null);
+            return (int) (filter != null ? this.repository.countByName(filter) : repository.count()) + extraCount;
         }, identifierSupplier);
     }
 
+    private static class PageCursors {
+        private static final int MAX_CURSORS = 256;
+
+        private final Map<String, PageCursor> cursors = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PageCursor> eldest) {
+                return this.size() > MAX_CURSORS;
+            }
+        };
+
+        private synchronized PageCursor get(String queryKey, int offset) {
+            return this.cursors.get(queryKey + "\n" + offset);
+        }
+
+        private synchronized void put(String queryKey, int offset, PageCursor cursor) {
+            this.cursors.put(queryKey + "\n" + offset, cursor);
+        }
 
+        private synchronized void clear() {
+            this.cursors.clear();
+        }
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compresses everything written to it before passing it to the delegate stream.
+ */
+public class GzipWriteStream implements WriteStream<Buffer> {
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final WriteStream<Buffer> delegate;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] output = new byte[1024 * 16];
+    private boolean headerWritten;
+
+    public GzipWriteStream(WriteStream<Buffer> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Future<Void> write(Buffer data) {
+        ByteBuffer input = data.getByteBuf().nioBuffer();
+        this.crc.update(input.duplicate());
+        this.deflater.setInput(input);
+
+        Buffer compressed = this.createBuffer();
+        while (!this.deflater.needsInput()) {
+            this.deflate(compressed);
+        }
+
+        if (compressed.length() == 0) {
+            return Future.succeededFuture(); // everything is still buffered in deflater
+        }
+        return this.delegate.write(compressed);
+    }
+
+    @Override
+    public void write(Buffer data, Handler<AsyncResult<Void>> handler) {
+        Future<Void> future = this.write(data);
+        if (handler != null) {
+            future.onComplete(handler);
+        }
+    }
+
+    @Override
+    public void end(Handler<AsyncResult<Void>> handler) {
+        Buffer compressed = this.createBuffer();
+        this.deflater.finish();
+        while (!this.deflater.finished()) {
+            this.deflate(compressed);
+        }
+        compressed.appendIntLE((int) this.crc.getValue());
+        compressed.appendIntLE((int) this.deflater.getBytesRead());
+        this.deflater.end();
+        this.delegate.end(compressed, handler);
+    }
+
+    private Buffer createBuffer() {
+        Buffer buffer = Buffer.buffer();
+        if (!this.headerWritten) {
+            buffer.appendBytes(HEADER);
+            this.headerWritten = true;
+        }
+        return buffer;
+    }
+
+    private void deflate(Buffer buffer) {
+        int length = this.deflater.deflate(this.output);
+        buffer.appendBytes(this.output, 0, length);
+    }
+
+    @Override
+    public GzipWriteStream exceptionHandler(Handler<Throwable> handler) {
+        this.delegate.exceptionHandler(handler);
+        return this;
+    }
+
+    @Override
+    public GzipWriteStream setWriteQueueMaxSize(int maxSize) {
+        this.delegate.setWriteQueueMaxSize(maxSize);
+        return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return this.delegate.writeQueueFull();
+    }
+
+    @Override
+    public GzipWriteStream drainHandler(Handler<Void> handler) {
+        this.delegate.drainHandler(handler);
+        return this;
+    }
+}
@@ -27,9 +27,17 @@ import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.notification.NotificationVariant;
 import org.eclipse.microprofile.jwt.JsonWebToken;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 import java.util.function.Consumer;
 
 public class Helper {
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+            .withZone(ZoneOffset.UTC);
 
     public static void push(UI ui, Runnable runnable) {
         ui.access(() -> {
@@ -80,6 +88,38 @@ public class Helper {
         return name == null ? "" : name;
     }
 
+    public static String httpDate(long timestamp) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(timestamp));
+    }
+
+    public static boolean matchesEtag(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2); // weak comparison is fine for GET
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Percent-encodes every segment of the path, leaving separators untouched.
+     */
+    public static String encodeUrlPath(String path) {
+        String[] segments = path.split("/", -1);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                builder.append('/');
+            }
+            builder.append(URLEncoder.encode(segments[i], StandardCharsets.UTF_8).replace("+", "%20"));
+        }
+        return builder.toString();
+    }
+
     public static String error(String message) {
         return "{\"status\":\"error\",\"message\":\""+message+"\"}";
     }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class HttpRange {
+    public static final HttpRange UNSATISFIABLE = new HttpRange(-1, -1);
+
+    private final long start;
+    private final long end; // inclusive
+
+    public long getLength() {
+        return this.end - this.start + 1;
+    }
+
+    public boolean isSatisfiable() {
+        return this != UNSATISFIABLE;
+    }
+
+    /**
+     * Parses a single byte range of the Range header.
+     * Returns null if the header is missing, malformed or requests multiple ranges, in which case whole content should be served.
+     */
+    public static HttpRange parse(String header, long size) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+
+        String spec = header.substring("bytes=".length()).trim();
+        int separator = spec.indexOf('-');
+        if (separator < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+
+        String startString = spec.substring(0, separator).trim();
+        String endString = spec.substring(separator + 1).trim();
+        try {
+            if (startString.isEmpty()) {
+                // Suffix range, last N bytes
+                long suffix = Long.parseLong(endString);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new HttpRange(Math.max(0, size - suffix), size - 1);
+            }
+
+            long start = Long.parseLong(startString);
+            long end = endString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endString);
+            if (start < 0 || end < start) {
+                return null;
+            }
+
+            if (start >= size) {
+                return UNSATISFIABLE;
+            }
+            return new HttpRange(start, Math.min(end, size - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
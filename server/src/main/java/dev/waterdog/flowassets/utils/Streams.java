@@ -19,6 +19,13 @@ import io.vertx.core.buffer.Buffer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 public class Streams {
 
@@ -34,4 +41,30 @@ public class Streams {
         }
         return buffer;
     }
+
+    public static String sha256(Path path) throws IOException {
+        MessageDigest digest = createSha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 64);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                digest.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String sha256(Buffer buffer) {
+        MessageDigest digest = createSha256();
+        digest.update(buffer.getByteBuf().nioBuffer());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest createSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.streams.WriteStream;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes ustar archive entries directly to a {@link WriteStream}, without staging files in memory.
+ * Names longer than 100 bytes are written using GNU long name entries.
+ */
+public class TarArchiveWriter {
+    private static final int BLOCK_SIZE = 512;
+
+    private final Vertx vertx;
+    @Getter
+    private final WriteStream<Buffer> stream;
+
+    public TarArchiveWriter(Vertx vertx, WriteStream<Buffer> stream) {
+        this.vertx = vertx;
+        this.stream = stream;
+    }
+
+    public Future<Void> writeFile(String name, String path) {
+        return this.vertx.fileSystem().props(path).compose(props -> this.writeHeader(name, props.size(), props.lastModifiedTime())
+                .compose(i -> this.vertx.fileSystem().open(path, new OpenOptions().setRead(true)))
+                .compose(file -> file.pipe()
+                        .endOnComplete(false)
+                        .to(this.stream)
+                        .eventually(i -> file.close()))
+                .compose(i -> this.writePadding(props.size())));
+    }
+
+    public Future<Void> writeHeader(String name, long size, long lastModified) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        Buffer buffer = Buffer.buffer(BLOCK_SIZE * 2);
+        if (nameBytes.length > 100) {
+            buffer.appendBytes(createHeader("././@LongLink".getBytes(StandardCharsets.US_ASCII), nameBytes.length + 1, 0, (byte) 'L'));
+            buffer.appendBytes(nameBytes).appendByte((byte) 0);
+            buffer.appendBytes(new byte[padding(nameBytes.length + 1)]);
+        }
+        buffer.appendBytes(createHeader(nameBytes, size, lastModified / 1000, (byte) '0'));
+        return this.stream.write(buffer);
+    }
+
+    public Future<Void> writePadding(long size) {
+        int padding = padding(size);
+        return padding == 0 ? Future.succeededFuture() : this.stream.write(Buffer.buffer(new byte[padding]));
+    }
+
+    /**
+     * Writes end of archive marker and ends the underlying stream.
+     */
+    public Future<Void> finish() {
+        return this.stream.end(Buffer.buffer(new byte[BLOCK_SIZE * 2]));
+    }
+
+    public static String entryName(String directory, String fileName) {
+        if (directory == null || directory.isBlank()) {
+            return fileName;
+        }
+        return directory.endsWith("/") ? directory + fileName : directory + "/" + fileName;
+    }
+
+    private static byte[] createHeader(byte[] name, long size, long mtime, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(name, 0, header, 0, Math.min(name.length, 100));
+        writeOctal(header, 100, 8, 0644);
+        writeOctal(header, 108, 8, 0);
+        writeOctal(header, 116, 8, 0);
+        writeOctal(header, 124, 12, size);
+        writeOctal(header, 136, 12, mtime);
+        header[156] = type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        // Checksum is calculated with checksum field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        writeOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    private static void writeOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        if (octal.length() > length - 1) {
+            throw new IllegalArgumentException("Value " + value + " does not fit tar header");
+        }
+
+        int padding = length - 1 - octal.length();
+        for (int i = 0; i < padding; i++) {
+            header[offset + i] = '0';
+        }
+        System.arraycopy(octal.getBytes(StandardCharsets.US_ASCII), 0, header, offset + padding, octal.length());
+        header[offset + length - 1] = 0;
+    }
+
+    private static int padding(long size) {
+        int remainder = (int) (size % BLOCK_SIZE);
+        return remainder == 0 ? 0 : BLOCK_SIZE - remainder;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Generates time-ordered version 7 UUIDs. New rows are appended at the end of the
+ * primary key index instead of being scattered across it like random UUIDs.
+ */
+public class UuidV7Generator implements IdentifierGenerator {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static long lastTimestamp;
+    private static int sequence;
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        return generate();
+    }
+
+    public static UUID generate() {
+        long timestamp;
+        int counter;
+        synchronized (UuidV7Generator.class) {
+            timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+            if (timestamp == lastTimestamp) {
+                if (++sequence > 0xfff) {
+                    // Sequence exhausted, borrow next millisecond to stay monotonic
+                    timestamp++;
+                    sequence = RANDOM.nextInt(0x800);
+                }
+            } else {
+                sequence = RANDOM.nextInt(0x800);
+            }
+            lastTimestamp = timestamp;
+            counter = sequence;
+        }
+
+        long mostSigBits = (timestamp << 16) | 0x7000L | counter;
+        long leastSigBits = (RANDOM.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Streams S3 object content to a {@link WriteStream}, requesting next chunk only once previous one was written.
+ */
+public class WriteStreamResponseTransformer implements AsyncResponseTransformer<GetObjectResponse, GetObjectResponse> {
+
+    private final WriteStream<Buffer> stream;
+    // Invoked before any content is written, e.g. to write entry header
+    private final Function<GetObjectResponse, Future<Void>> onResponse;
+
+    private volatile CompletableFuture<GetObjectResponse> future;
+    private volatile GetObjectResponse response;
+
+    public WriteStreamResponseTransformer(WriteStream<Buffer> stream, Function<GetObjectResponse, Future<Void>> onResponse) {
+        this.stream = stream;
+        this.onResponse = onResponse;
+    }
+
+    @Override
+    public CompletableFuture<GetObjectResponse> prepare() {
+        this.future = new CompletableFuture<>();
+        return this.future;
+    }
+
+    @Override
+    public void onResponse(GetObjectResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    public void onStream(SdkPublisher<ByteBuffer> publisher) {
+        this.onResponse.apply(this.response).onComplete(result -> {
+            if (result.failed()) {
+                this.future.completeExceptionally(result.cause());
+            } else {
+                publisher.subscribe(new ContentSubscriber());
+            }
+        });
+    }
+
+    @Override
+    public void exceptionOccurred(Throwable error) {
+        this.future.completeExceptionally(error);
+    }
+
+    private class ContentSubscriber implements Subscriber<ByteBuffer> {
+        private Subscription subscription;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ByteBuffer byteBuffer) {
+            stream.write(Buffer.buffer(Unpooled.wrappedBuffer(byteBuffer))).onComplete(result -> {
+                if (result.succeeded()) {
+                    this.subscription.request(1);
+                } else {
+                    this.subscription.cancel();
+                    future.completeExceptionally(result.cause());
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            future.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            future.complete(response);
+        }
+    }
+}
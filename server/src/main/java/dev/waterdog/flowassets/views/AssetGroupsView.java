@@ -20,9 +20,11 @@ import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.data.provider.ConfigurableFilterDataProvider;
 import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import dev.waterdog.flowassets.repositories.AbstractRepository;
 import dev.waterdog.flowassets.repositories.AssetGroupRepository;
 import dev.waterdog.flowassets.structure.AssetGroup;
 import dev.waterdog.flowassets.views.forms.AssetGroupsForm;
@@ -36,6 +38,7 @@ public class AssetGroupsView extends VerticalLayout {
 
     private final Grid<AssetGroup> grid = new Grid<>(AssetGroup.class);
     private final TextField nameFilter = new TextField();
+    private ConfigurableFilterDataProvider<AssetGroup, Void, String> dataProvider;
     private final AssetGroupsForm form;
 
     @Inject
@@ -63,8 +66,11 @@ public class AssetGroupsView extends VerticalLayout {
         this.grid.setSizeFull();
         this.grid.removeAllColumns();
         this.grid.addColumn(AssetGroup::getName)
-                .setHeader("Name");
+                .setHeader("Name")
+                .setSortProperty(AbstractRepository.NAME_SORT_KEY);
 
+        this.dataProvider = AbstractRepository.createDataProvider(this.repository).withConfigurableFilter();
+        this.grid.setItems(this.dataProvider);
         this.grid.getColumns().forEach(col -> col.setAutoWidth(true));
         this.grid.asSingleSelect().addValueChangeListener(event -> this.edit(event.getValue(), false));
     }
@@ -97,6 +103,6 @@ public class AssetGroupsView extends VerticalLayout {
     }
 
     public void updateList() {
-        this.grid.setItems(this.repository.findByName(this.nameFilter.getValue()));
+        this.dataProvider.setFilter(this.nameFilter.getValue());
     }
 }
@@ -33,6 +33,7 @@ import com.vaadin.flow.data.provider.*;
 import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import dev.waterdog.flowassets.repositories.AbstractRepository;
 import dev.waterdog.flowassets.repositories.AssetGroupRepository;
 import dev.waterdog.flowassets.repositories.AssetsRepository;
 import dev.waterdog.flowassets.repositories.DeployPathsRepository;
@@ -58,6 +59,7 @@ public class AssetsView extends VerticalLayout {
 
     Grid<FlowAsset> grid = new Grid<>(FlowAsset.class);
     TextField nameFilter = new TextField();
+    private ConfigurableFilterDataProvider<FlowAsset, Void, String> dataProvider;
     AssetsForm form;
 
     @Inject
@@ -109,7 +111,8 @@ public class AssetsView extends VerticalLayout {
             return layout;
         }).setHeader("Group").setFlexGrow(0);
         this.grid.addColumn(FlowAsset::getAssetName)
-                .setHeader("Name").setSortable(true);
+                .setHeader("Name")
+                .setSortProperty(AbstractRepository.NAME_SORT_KEY);
         this.grid.addColumn(FlowAsset::getUuid)
                 .setHeader("UUID");
         this.grid.addColumn(asset -> asset.getDeployPath() == null ? "None" : asset.getDeployPath().getName())
@@ -125,11 +128,8 @@ public class AssetsView extends VerticalLayout {
             return button;
         });
 
-        this.grid.setItems(DataProvider.fromCallbacks(query ->
-                        this.assetsRepository.findByName(this.nameFilter.getValue(), query.getPage(), query.getPageSize()).stream(),
-                query -> (int) this.assetsRepository.countByName(this.nameFilter.getValue())));
-
-
+        this.dataProvider = AbstractRepository.createDataProvider(this.assetsRepository).withConfigurableFilter();
+        this.grid.setItems(this.dataProvider);
         this.grid.getColumns().forEach(col -> col.setAutoWidth(true));
         this.grid.asSingleSelect().addValueChangeListener(event -> this.editContact(event.getValue(), false));
     }
@@ -173,7 +173,7 @@ public class AssetsView extends VerticalLayout {
             button.addThemeVariants(ButtonVariant.LUMO_PRIMARY);
             button.getStyle().set("margin-right", "auto");
             dialog.getFooter().add(button);
-            dialog.getFooter().add(new Anchor(StorageRepositoryImpl.createDownloadUrl(asset, storage), button));
+            dialog.getFooter().add(new Anchor(StorageRepositoryImpl.createDirectDownloadUrl(asset, storage), button));
             dialog.add(new Paragraph("You can download the asset files here:"));
         }
 
@@ -181,6 +181,6 @@ public class AssetsView extends VerticalLayout {
     }
 
     public void updateList() {
-        this.grid.getDataProvider().refreshAll();
+        this.dataProvider.setFilter(this.nameFilter.getValue());
     }
 }
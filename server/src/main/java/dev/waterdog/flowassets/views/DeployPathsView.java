@@ -21,9 +21,11 @@ import com.vaadin.flow.component.orderedlayout.FlexLayout;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.data.provider.ConfigurableFilterDataProvider;
 import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import dev.waterdog.flowassets.repositories.AbstractRepository;
 import dev.waterdog.flowassets.repositories.DeployPathsRepository;
 import dev.waterdog.flowassets.structure.DeployPath;
 import dev.waterdog.flowassets.views.forms.DeployPathsForm;
@@ -37,6 +39,7 @@ public class DeployPathsView extends VerticalLayout {
 
     private final Grid<DeployPath> grid = new Grid<>(DeployPath.class);
     private final TextField nameFilter = new TextField();
+    private ConfigurableFilterDataProvider<DeployPath, Void, String> dataProvider;
     private final DeployPathsForm form;
 
     @Inject
@@ -64,10 +67,13 @@ public class DeployPathsView extends VerticalLayout {
         this.grid.setSizeFull();
         this.grid.removeAllColumns();
         this.grid.addColumn(DeployPath::getName)
-                .setHeader("Name");
+                .setHeader("Name")
+                .setSortProperty(AbstractRepository.NAME_SORT_KEY);
         this.grid.addColumn(DeployPath::getPath)
                 .setHeader("Deploy Path");
 
+        this.dataProvider = AbstractRepository.createDataProvider(this.repository).withConfigurableFilter();
+        this.grid.setItems(this.dataProvider);
         this.grid.getColumns().forEach(col -> col.setAutoWidth(true));
         this.grid.asSingleSelect().addValueChangeListener(event -> this.editDeployPath(event.getValue(), false));
     }
@@ -100,6 +106,6 @@ public class DeployPathsView extends VerticalLayout {
     }
 
     public void updateList() {
-        this.grid.setItems(this.repository.findByName(this.nameFilter.getValue()));
+        this.dataProvider.setFilter(this.nameFilter.getValue());
     }
 }
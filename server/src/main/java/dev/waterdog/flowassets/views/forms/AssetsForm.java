@@ -22,7 +22,7 @@ import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.combobox.MultiSelectComboBox;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.component.upload.*;
-import com.vaadin.flow.component.upload.receivers.MemoryBuffer;
+import com.vaadin.flow.component.upload.receivers.FileBuffer;
 import com.vaadin.flow.data.binder.BeanValidationBinder;
 import com.vaadin.flow.data.binder.Binder;
 import com.vaadin.flow.data.binder.ValidationException;
@@ -41,6 +41,8 @@ import lombok.extern.jbosslog.JBossLog;
 
 import javax.transaction.Transactional;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
@@ -66,8 +68,8 @@ public class AssetsForm extends AbstractEditForm<FlowAsset> {
     ComboBox<DeployPathWrapper> deployPath = new ComboBox<>("Deploy Path");
     MultiSelectComboBox<AssetGroup> assetGroup = new MultiSelectComboBox<>("Groups");
 
-    MemoryBuffer memoryBuffer = new MemoryBuffer();
-    Upload singleFileUpload = new Upload(memoryBuffer);
+    FileBuffer fileBuffer = new FileBuffer();
+    Upload singleFileUpload = new Upload(fileBuffer);
 
     // Read-only fields
     TextField assetLocation = new TextField("Remote Asset Location");
@@ -178,9 +180,10 @@ public class AssetsForm extends AbstractEditForm<FlowAsset> {
             return;
         }
 
+        Path uploadPath = this.fileBuffer.getFileData().getFile().toPath();
         FileSnapshot snapshot;
         try {
-            snapshot = FileSnapshot.createSkeleton(this.uploadName, this.memoryBuffer.getInputStream());
+            snapshot = FileSnapshot.createSkeleton(this.uploadName, uploadPath);
         } catch (IOException e) {
             log.error("Can not create buffer", e);
             Helper.errorNotif("Unable to create asset");
@@ -190,6 +193,12 @@ public class AssetsForm extends AbstractEditForm<FlowAsset> {
         UI ui = UI.getCurrent();
         CompletableFuture<FlowAsset> future = FlowAsset.uploadAsset(value, snapshot, this.assetsRepository, storageRepository);
         future.whenComplete((i, error) -> {
+            try {
+                Files.deleteIfExists(uploadPath);
+            } catch (IOException e) {
+                log.warn("Can not delete temporary upload " + uploadPath, e);
+            }
+
             if (error != null) {
                 Helper.push(ui, () -> Helper.errorNotif("Can not save asset"));
                 log.error("Can not save asset", error);
@@ -19,6 +19,7 @@ import com.vaadin.flow.component.AbstractSinglePropertyField;
 import com.vaadin.flow.component.ClickEvent;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.combobox.ComboBox;
+import com.vaadin.flow.component.textfield.IntegerField;
 import com.vaadin.flow.component.textfield.PasswordField;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.data.binder.BeanValidationBinder;
@@ -48,6 +49,7 @@ public class S3ServersForm extends AbstractEditForm<S3ServerData> {
     ComboBox<String> serverRegion = new ComboBox<>("Region");
     PasswordField accessKey = new PasswordField("Access Key");
     PasswordField secretkey = new PasswordField("Secret Key");
+    IntegerField signatureDuration = new IntegerField("Download Link Validity (seconds)");
     Binder<S3ServerData> binder = new BeanValidationBinder<>(S3ServerData.class);
 
     public S3ServersForm(S3ServersView parent, S3ServersRepository assetsRepository) {
@@ -60,6 +62,10 @@ public class S3ServersForm extends AbstractEditForm<S3ServerData> {
                 .map(Region::id)
                 .toList());
 
+        this.signatureDuration.setMin(1);
+        this.signatureDuration.setMax(7 * 24 * 60 * 60); // limit of SigV4 presigned URLs
+        this.signatureDuration.setHelperText("Leave empty to use server default");
+
         this.binder.bindInstanceFields(this);
         this.binder.forField(this.bucketUrl)
                 .withValidator(this::testUrl, "Invalid URL")
@@ -71,7 +77,7 @@ public class S3ServersForm extends AbstractEditForm<S3ServerData> {
         this.validateNotEmpty(this.serverRegion, S3ServerData::getRegionName, S3ServerData::setRegionName);
 
         this.binder.addStatusChangeListener(e -> this.save.setEnabled(this.binder.isValid()));
-        this.add(this.serverName, this.bucketName, this.bucketUrl, this.accessKey, this.secretkey);
+        this.add(this.serverName, this.bucketName, this.bucketUrl, this.accessKey, this.secretkey, this.signatureDuration);
         this.addParentComponents();
     }
 
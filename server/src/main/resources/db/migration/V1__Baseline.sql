@@ -0,0 +1,55 @@
+-- Schema as created by Hibernate schema update before migrations were introduced
+CREATE TABLE hibernate_sequence (
+    next_val BIGINT
+) ENGINE = InnoDB;
+INSERT INTO hibernate_sequence VALUES (1);
+
+CREATE TABLE asset_groups (
+    id BIGINT NOT NULL,
+    name VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE deploy_paths (
+    id BIGINT NOT NULL,
+    name VARCHAR(255),
+    deploy_path VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE s3_servers (
+    id BIGINT NOT NULL,
+    name VARCHAR(255),
+    bucket_url VARCHAR(255),
+    bucket_name VARCHAR(255),
+    access_key VARCHAR(255),
+    secret_key VARCHAR(255),
+    region_name VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE secret_tokens (
+    id BIGINT NOT NULL,
+    name VARCHAR(255),
+    description VARCHAR(255),
+    token_hash VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE assets (
+    uuid VARCHAR(36) NOT NULL,
+    asset_name VARCHAR(255),
+    asset_location VARCHAR(255),
+    asset_repository VARCHAR(255),
+    path_id BIGINT,
+    PRIMARY KEY (uuid),
+    CONSTRAINT fk_assets_deploy_path FOREIGN KEY (path_id) REFERENCES deploy_paths (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE groups_join (
+    asset_id VARCHAR(36) NOT NULL,
+    group_id BIGINT NOT NULL,
+    PRIMARY KEY (asset_id, group_id),
+    CONSTRAINT fk_groups_join_asset FOREIGN KEY (asset_id) REFERENCES assets (uuid),
+    CONSTRAINT fk_groups_join_group FOREIGN KEY (group_id) REFERENCES asset_groups (id)
+) ENGINE = InnoDB;
@@ -0,0 +1,8 @@
+ALTER TABLE assets
+    ADD COLUMN content_hash VARCHAR(64),
+    ADD COLUMN content_addressed BIT NOT NULL DEFAULT 0,
+    ADD COLUMN content_size BIGINT,
+    ADD COLUMN last_modified DATETIME(6);
+
+ALTER TABLE s3_servers
+    ADD COLUMN signature_duration INTEGER;
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.repositories;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AssetNameIndexTest {
+    private static final UUID FIRST = UUID.fromString("00000000-0000-7000-8000-000000000001");
+    private static final UUID SECOND = UUID.fromString("00000000-0000-7000-8000-000000000002");
+    private static final UUID THIRD = UUID.fromString("00000000-0000-7000-8000-000000000003");
+    private static final UUID FOURTH = UUID.fromString("00000000-0000-7000-8000-000000000004");
+
+    @Test
+    void matchesExactNames() {
+        AssetNameIndex index = createIndex();
+        assertEquals(List.of("Lobby.jar"), names(index.search("\"lobby.jar\"", AssetNameIndex.BY_NAME)));
+        assertEquals(List.of(), names(index.search("\"lobby\"", AssetNameIndex.BY_NAME)));
+    }
+
+    @Test
+    void matchesPrefixes() {
+        AssetNameIndex index = createIndex();
+        assertEquals(List.of("lobby-config.yml", "Lobby.jar"), names(index.search("LOBBY*", AssetNameIndex.BY_NAME)));
+        assertEquals(List.of(), names(index.search("config*", AssetNameIndex.BY_NAME)));
+    }
+
+    @Test
+    void matchesSubstringsUsingTrigrams() {
+        AssetNameIndex index = createIndex();
+        assertEquals(List.of("lobby-config.yml", "server-config.yml"), names(index.search("config", AssetNameIndex.BY_NAME)));
+        assertEquals(List.of("Lobby.jar", "Proxy.jar"), names(index.search(".jar", AssetNameIndex.BY_NAME)));
+        // Every trigram is present, but not as a single substring
+        assertEquals(List.of(), names(index.search("lobby.yml", AssetNameIndex.BY_NAME)));
+        assertEquals(List.of(), names(index.search("missing", AssetNameIndex.BY_NAME)));
+    }
+
+    @Test
+    void scansShortQueries() {
+        AssetNameIndex index = createIndex();
+        assertEquals(List.of("Proxy.jar"), names(index.search("xy", AssetNameIndex.BY_NAME)));
+        assertEquals(4, index.search("", AssetNameIndex.BY_NAME).size());
+    }
+
+    @Test
+    void ordersByUuid() {
+        AssetNameIndex index = createIndex();
+        List<AssetNameIndex.Entry> entries = index.search(".", AssetNameIndex.BY_UUID);
+        assertEquals(List.of(FIRST, SECOND, THIRD, FOURTH), entries.stream().map(AssetNameIndex.Entry::uuid).collect(Collectors.toList()));
+    }
+
+    @Test
+    void seeksAfterCursor() {
+        AssetNameIndex index = createIndex();
+        List<AssetNameIndex.Entry> entries = index.search("", AssetNameIndex.BY_NAME);
+
+        // Existing entry continues after itself
+        assertEquals(1, AssetNameIndex.seek(entries, AssetNameIndex.BY_NAME, entries.get(0)));
+        assertEquals(entries.size(), AssetNameIndex.seek(entries, AssetNameIndex.BY_NAME, entries.get(entries.size() - 1)));
+        // Removed entry continues where it would have been
+        assertEquals(1, AssetNameIndex.seek(entries, AssetNameIndex.BY_NAME, new AssetNameIndex.Entry(FOURTH, "lobby-d")));
+        assertEquals(0, AssetNameIndex.seek(entries, AssetNameIndex.BY_NAME, new AssetNameIndex.Entry(FOURTH, "a")));
+    }
+
+    @Test
+    void updatesEntries() {
+        AssetNameIndex index = createIndex();
+        index.put(FIRST, "Renamed.jar");
+        index.remove(SECOND);
+
+        assertEquals(List.of(), names(index.search("lobby*", AssetNameIndex.BY_NAME)));
+        assertEquals(List.of("Renamed.jar"), names(index.search("named", AssetNameIndex.BY_NAME)));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void rebuildKeepsConcurrentChanges() {
+        AssetNameIndex index = createIndex();
+        long version = index.getVersion();
+        // Changed while names were being loaded, so the loaded names are stale
+        index.put(FIRST, "Renamed.jar");
+        index.remove(SECOND);
+        index.rebuild(Map.of(FIRST, "Lobby.jar", SECOND, "lobby-config.yml", THIRD, "Proxy.jar"), version);
+
+        assertEquals(List.of("Proxy.jar", "Renamed.jar"), names(index.search("", AssetNameIndex.BY_NAME)));
+    }
+
+    @Test
+    void ignoresOvertakenRebuild() {
+        AssetNameIndex index = createIndex();
+        long staleVersion = index.getVersion();
+        index.put(FIRST, "Renamed.jar");
+        long version = index.getVersion();
+        index.rebuild(Map.of(FIRST, "Renamed.jar"), version);
+        index.rebuild(Map.of(FIRST, "Lobby.jar", SECOND, "lobby-config.yml"), staleVersion);
+
+        assertEquals(List.of("Renamed.jar"), names(index.search("", AssetNameIndex.BY_NAME)));
+    }
+
+    private static AssetNameIndex createIndex() {
+        AssetNameIndex index = new AssetNameIndex();
+        assertFalse(index.isLoaded());
+        index.rebuild(Map.of(
+                FOURTH, "server-config.yml",
+                SECOND, "lobby-config.yml",
+                FIRST, "Lobby.jar",
+                THIRD, "Proxy.jar"), index.getVersion());
+        assertTrue(index.isLoaded());
+        return index;
+    }
+
+    private static List<String> names(List<AssetNameIndex.Entry> entries) {
+        return entries.stream().map(AssetNameIndex.Entry::name).collect(Collectors.toList());
+    }
+}
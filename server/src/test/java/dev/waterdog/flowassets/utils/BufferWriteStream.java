@@ -0,0 +1,82 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * Collects everything written to it, so tests can inspect streamed output.
+ */
+class BufferWriteStream implements WriteStream<Buffer> {
+    private final Buffer content = Buffer.buffer();
+    private boolean ended;
+
+    synchronized byte[] getBytes() {
+        return this.content.getBytes();
+    }
+
+    synchronized boolean isEnded() {
+        return this.ended;
+    }
+
+    @Override
+    public synchronized Future<Void> write(Buffer data) {
+        this.content.appendBuffer(data);
+        return Future.succeededFuture();
+    }
+
+    @Override
+    public void write(Buffer data, Handler<AsyncResult<Void>> handler) {
+        Future<Void> future = this.write(data);
+        if (handler != null) {
+            future.onComplete(handler);
+        }
+    }
+
+    @Override
+    public void end(Handler<AsyncResult<Void>> handler) {
+        synchronized (this) {
+            this.ended = true;
+        }
+        if (handler != null) {
+            handler.handle(Future.succeededFuture());
+        }
+    }
+
+    @Override
+    public BufferWriteStream exceptionHandler(Handler<Throwable> handler) {
+        return this;
+    }
+
+    @Override
+    public BufferWriteStream setWriteQueueMaxSize(int maxSize) {
+        return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return false;
+    }
+
+    @Override
+    public BufferWriteStream drainHandler(Handler<Void> handler) {
+        return this;
+    }
+}
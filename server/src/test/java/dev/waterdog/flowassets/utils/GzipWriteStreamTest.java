@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GzipWriteStreamTest {
+
+    @Test
+    void compressesWrittenChunks() throws IOException {
+        byte[] content = new byte[256 * 1024];
+        Random random = new Random(42);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) random.nextInt(16);
+        }
+
+        BufferWriteStream target = new BufferWriteStream();
+        GzipWriteStream gzip = new GzipWriteStream(target);
+        for (int offset = 0; offset < content.length; offset += 10_000) {
+            gzip.write(Buffer.buffer(Arrays.copyOfRange(content, offset, Math.min(content.length, offset + 10_000))));
+        }
+        gzip.end();
+
+        assertTrue(target.isEnded());
+        byte[] compressed = target.getBytes();
+        assertTrue(compressed.length < content.length);
+        assertArrayEquals(content, decompress(compressed));
+    }
+
+    @Test
+    void emptyStreamIsValidGzip() throws IOException {
+        BufferWriteStream target = new BufferWriteStream();
+        GzipWriteStream gzip = new GzipWriteStream(target);
+        gzip.end();
+
+        assertTrue(target.isEnded());
+        assertEquals(0, decompress(target.getBytes()).length);
+    }
+
+    @Test
+    void writesHeaderOnlyOnce() throws IOException {
+        BufferWriteStream target = new BufferWriteStream();
+        GzipWriteStream gzip = new GzipWriteStream(target);
+        gzip.write(Buffer.buffer("first "));
+        gzip.write(Buffer.buffer("second"));
+        gzip.end();
+
+        byte[] compressed = target.getBytes();
+        assertEquals(0x1f, compressed[0] & 0xFF);
+        assertEquals(0x8b, compressed[1] & 0xFF);
+        assertEquals("first second", new String(decompress(compressed)));
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (InputStream stream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return stream.readAllBytes();
+        }
+    }
+}
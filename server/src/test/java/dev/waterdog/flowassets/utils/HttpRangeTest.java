@@ -0,0 +1,96 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpRangeTest {
+    private static final long SIZE = 1000;
+
+    @Test
+    void parsesClosedRange() {
+        HttpRange range = HttpRange.parse("bytes=100-199", SIZE);
+        assertTrue(range.isSatisfiable());
+        assertEquals(100, range.getStart());
+        assertEquals(199, range.getEnd());
+        assertEquals(100, range.getLength());
+    }
+
+    @Test
+    void clampsEndToContent() {
+        HttpRange range = HttpRange.parse("bytes=900-5000", SIZE);
+        assertEquals(900, range.getStart());
+        assertEquals(999, range.getEnd());
+    }
+
+    @Test
+    void parsesOpenEndedRange() {
+        HttpRange range = HttpRange.parse("bytes=250-", SIZE);
+        assertEquals(250, range.getStart());
+        assertEquals(999, range.getEnd());
+        assertEquals(750, range.getLength());
+    }
+
+    @Test
+    void parsesSuffixRange() {
+        HttpRange range = HttpRange.parse("bytes=-100", SIZE);
+        assertEquals(900, range.getStart());
+        assertEquals(999, range.getEnd());
+    }
+
+    @Test
+    void suffixLongerThanContentReturnsWholeContent() {
+        HttpRange range = HttpRange.parse("bytes=-5000", SIZE);
+        assertEquals(0, range.getStart());
+        assertEquals(999, range.getEnd());
+    }
+
+    @Test
+    void emptySuffixIsUnsatisfiable() {
+        assertSame(HttpRange.UNSATISFIABLE, HttpRange.parse("bytes=-0", SIZE));
+        assertSame(HttpRange.UNSATISFIABLE, HttpRange.parse("bytes=-10", 0));
+    }
+
+    @Test
+    void startBeyondContentIsUnsatisfiable() {
+        HttpRange range = HttpRange.parse("bytes=1000-1100", SIZE);
+        assertSame(HttpRange.UNSATISFIABLE, range);
+        assertFalse(range.isSatisfiable());
+        assertSame(HttpRange.UNSATISFIABLE, HttpRange.parse("bytes=0-", 0));
+    }
+
+    @Test
+    void multipleRangesServeWholeContent() {
+        assertNull(HttpRange.parse("bytes=0-99,200-299", SIZE));
+        assertNull(HttpRange.parse("bytes=-100, 0-1", SIZE));
+    }
+
+    @Test
+    void malformedHeadersServeWholeContent() {
+        assertNull(HttpRange.parse(null, SIZE));
+        assertNull(HttpRange.parse("items=0-10", SIZE));
+        assertNull(HttpRange.parse("bytes=10", SIZE));
+        assertNull(HttpRange.parse("bytes=abc-def", SIZE));
+        assertNull(HttpRange.parse("bytes=200-100", SIZE));
+        assertNull(HttpRange.parse("bytes=-", SIZE));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TarArchiveWriterTest {
+    private static final int BLOCK_SIZE = 512;
+
+    @Test
+    void writesShortNameInHeader() {
+        BufferWriteStream stream = new BufferWriteStream();
+        TarArchiveWriter writer = new TarArchiveWriter(null, stream);
+        writer.writeHeader("plugins/test.jar", 3, 1_000_000L);
+        stream.write(Buffer.buffer("abc"));
+        writer.writePadding(3);
+        writer.finish();
+
+        byte[] archive = stream.getBytes();
+        assertEquals(BLOCK_SIZE * 4, archive.length);
+        assertEquals("plugins/test.jar", readString(archive, 0, 100));
+        assertEquals('0', archive[156]);
+        assertEquals(3, readOctal(archive, 124, 12));
+        assertEquals(1000, readOctal(archive, 136, 12));
+        assertEquals("ustar", readString(archive, 257, 6));
+        assertChecksum(archive, 0);
+        assertEquals("abc", new String(archive, BLOCK_SIZE, 3, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writesLongNamesAsGnuLongLinkEntries() {
+        String name = "deploy/" + "a".repeat(120) + "/asset.jar";
+        BufferWriteStream stream = new BufferWriteStream();
+        TarArchiveWriter writer = new TarArchiveWriter(null, stream);
+        writer.writeHeader(name, 0, 0);
+        writer.finish();
+
+        byte[] archive = stream.getBytes();
+        int nameLength = name.length() + 1; // null terminated
+        assertEquals("././@LongLink", readString(archive, 0, 100));
+        assertEquals('L', archive[156]);
+        assertEquals(nameLength, readOctal(archive, 124, 12));
+        assertChecksum(archive, 0);
+        assertEquals(name, readString(archive, BLOCK_SIZE, nameLength));
+
+        int header = BLOCK_SIZE + (nameLength + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        assertEquals('0', archive[header + 156]);
+        assertEquals(name.substring(0, 100), readString(archive, header, 100));
+        assertChecksum(archive, header);
+        assertEquals(header + BLOCK_SIZE * 3, archive.length);
+    }
+
+    @Test
+    void writesFileContentWithPadding(@TempDir Path directory) throws Exception {
+        byte[] content = new byte[700];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Path file = directory.resolve("asset.bin");
+        Files.write(file, content);
+
+        Vertx vertx = Vertx.vertx();
+        try {
+            BufferWriteStream stream = new BufferWriteStream();
+            TarArchiveWriter writer = new TarArchiveWriter(vertx, stream);
+            writer.writeFile("asset.bin", file.toString())
+                    .compose(i -> writer.finish())
+                    .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+            byte[] archive = stream.getBytes();
+            assertEquals(BLOCK_SIZE + 1024 + BLOCK_SIZE * 2, archive.length);
+            assertEquals(700, readOctal(archive, 124, 12));
+            assertArrayEquals(content, Arrays.copyOfRange(archive, BLOCK_SIZE, BLOCK_SIZE + content.length));
+            assertArrayEquals(new byte[1024 - content.length], Arrays.copyOfRange(archive, BLOCK_SIZE + content.length, BLOCK_SIZE + 1024));
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    void joinsDeployPathAndFileName() {
+        assertEquals("asset.jar", TarArchiveWriter.entryName(null, "asset.jar"));
+        assertEquals("asset.jar", TarArchiveWriter.entryName(" ", "asset.jar"));
+        assertEquals("plugins/asset.jar", TarArchiveWriter.entryName("plugins", "asset.jar"));
+        assertEquals("plugins/asset.jar", TarArchiveWriter.entryName("plugins/", "asset.jar"));
+    }
+
+    private static void assertChecksum(byte[] archive, int offset) {
+        long checksum = 0;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            checksum += i >= offset + 148 && i < offset + 156 ? ' ' : archive[i] & 0xFF;
+        }
+        assertEquals(checksum, readOctal(archive, offset + 148, 8));
+    }
+
+    private static String readString(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long readOctal(byte[] bytes, int offset, int length) {
+        return Long.parseLong(readString(bytes, offset, length).trim(), 8);
+    }
+}
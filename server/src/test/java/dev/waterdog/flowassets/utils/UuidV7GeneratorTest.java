@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 WaterdogTEAM
+ * Licensed under the GNU General Public License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.gnu.org/licenses/old-licenses/gpl-2.0.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.waterdog.flowassets.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UuidV7GeneratorTest {
+
+    @Test
+    void setsVersionAndVariant() {
+        UUID uuid = UuidV7Generator.generate();
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+    }
+
+    @Test
+    void embedsCurrentTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID uuid = UuidV7Generator.generate();
+        long timestamp = uuid.getMostSignificantBits() >>> 16;
+        assertTrue(timestamp >= before, "timestamp " + timestamp + " is before " + before);
+    }
+
+    @Test
+    void generatesOrderedUuids() {
+        UUID previous = UuidV7Generator.generate();
+        for (int i = 0; i < 100_000; i++) {
+            UUID uuid = UuidV7Generator.generate();
+            assertTrue(Long.compareUnsigned(uuid.getMostSignificantBits(), previous.getMostSignificantBits()) > 0,
+                    uuid + " is not after " + previous);
+            // String order is what the binary uuid column is sorted by
+            assertTrue(uuid.toString().compareTo(previous.toString()) > 0, uuid + " is not after " + previous);
+            previous = uuid;
+        }
+    }
+
+    @Test
+    void borrowsNextMillisecondWhenSequenceIsExhausted() throws ReflectiveOperationException {
+        Field lastTimestamp = UuidV7Generator.class.getDeclaredField("lastTimestamp");
+        Field sequence = UuidV7Generator.class.getDeclaredField("sequence");
+        lastTimestamp.setAccessible(true);
+        sequence.setAccessible(true);
+
+        long timestamp = System.currentTimeMillis() + 60_000;
+        synchronized (UuidV7Generator.class) {
+            lastTimestamp.setLong(null, timestamp);
+            sequence.setInt(null, 0xffe);
+        }
+
+        UUID last = UuidV7Generator.generate();
+        assertEquals(timestamp, last.getMostSignificantBits() >>> 16);
+        assertEquals(0xfff, last.getMostSignificantBits() & 0xfff);
+
+        UUID borrowed = UuidV7Generator.generate();
+        assertEquals(timestamp + 1, borrowed.getMostSignificantBits() >>> 16);
+        assertTrue((borrowed.getMostSignificantBits() & 0xfff) < 0x800);
+        assertTrue(borrowed.toString().compareTo(last.toString()) > 0);
+    }
+}